@@ -0,0 +1,77 @@
+package toncc;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.EnumMap;
+import java.util.Map;
+
+/** Shows the estimates of a TonccAnalysis as they are refined: the
+ * chances of each king to win and its expected final score, with their
+ * 95% confidence intervals. The estimates are polled on the EDT a few
+ * times per second, so the analysis threads never touch Swing.
+ *
+ * @license GNU GPL v3
+ * @author Giacomo Parolini
+ */
+class AnalysisPanel extends JPanel {
+
+	/** Milliseconds between two updates */
+	static final int REFRESH_MILLIS = 250;
+
+	public AnalysisPanel(final TonccAnalysis analysis) {
+		this.analysis = analysis;
+
+		// King : Win chance : Expected score
+		setLayout(new GridLayout(6, 3, 10, 3));
+		add(new JLabel("KING"));
+		add(new JLabel("WINS"));
+		add(new JLabel("SCORE"));
+		for (King king : King.values()) {
+			add(new JLabel("<html><font color=\"" + htmlColor(king) + "\">"
+						+ king.getColorString() + "</font></html>"));
+			winLabels.put(king, new JLabel());
+			scoreLabels.put(king, new JLabel());
+			add(winLabels.get(king));
+			add(scoreLabels.get(king));
+		}
+		add(new JLabel("DRAW"));
+		add(drawLabel);
+		add(new JLabel());
+		add(new JLabel("GAMES"));
+		add(gamesLabel);
+		add(new JLabel());
+
+		timer = new Timer(REFRESH_MILLIS, e -> refresh());
+		timer.start();
+	}
+
+	/** Stops updating the panel */
+	public void stop() {
+		timer.stop();
+	}
+
+	/////// PRIVATE METHODS AND FIELDS ///////
+
+	private void refresh() {
+		final TonccAnalysis.Estimate est = analysis.snapshot();
+		for (King king : King.values()) {
+			winLabels.get(king).setText(String.format("%.1f%% ±%.1f",
+						100 * est.winRate(king), 100 * Math.min(1, est.winRateError(king))));
+			scoreLabels.get(king).setText(est.games < 2 ? "-" : String.format("%.2f ±%.2f",
+						est.meanScore(king), est.meanScoreError(king)));
+		}
+		drawLabel.setText(String.format("%.1f%% ±%.1f", 100 * est.drawRate(),
+					100 * Math.min(1, est.drawRateError())));
+		gamesLabel.setText(String.valueOf(est.games));
+	}
+
+	private static String htmlColor(final King king) {
+		return String.format("#%06X", king.getColor().getRGB() & 0xFFFFFF);
+	}
+
+	private final TonccAnalysis analysis;
+	private final Timer timer;
+	private final Map<King, JLabel> winLabels = new EnumMap<>(King.class),
+	                                scoreLabels = new EnumMap<>(King.class);
+	private final JLabel drawLabel = new JLabel(), gamesLabel = new JLabel();
+}
@@ -14,6 +14,10 @@ import javax.swing.*;
  *
  *  Also, any component added directly to this panel will be made
  *  non-opaque so that the custom painting can show through.
+ *
+ *  SCALED and TILED images are drawn once per size into a cached copy
+ *  in the format of the screen (kept in video memory when possible),
+ *  so that repainting the panel is a single blit.
  */
 public class BackgroundPanel extends JPanel
 {
@@ -28,6 +32,11 @@ public class BackgroundPanel extends JPanel
 	private float alignmentY = 0.5f;
 	private boolean isTransparentAdd = true;
 
+	//  The background at the current size, in the format of the screen,
+	//  and its copy in video memory (null if it can't be made)
+	private BufferedImage cache;
+	private VolatileImage volatileCache;
+
 	public BackgroundPanel() {
 		setStyle(SCALED);
 		setLayout(new BorderLayout());
@@ -78,6 +87,7 @@ public class BackgroundPanel extends JPanel
 	public void setImage(Image image)
 	{
 		this.image = image;
+		flushCache();
 		repaint();
 	}
 
@@ -87,6 +97,7 @@ public class BackgroundPanel extends JPanel
 	public void setStyle(int style)
 	{
 		this.style = style;
+		flushCache();
 		repaint();
 	}
 
@@ -206,38 +217,110 @@ public class BackgroundPanel extends JPanel
 
 		if (image == null ) return;
 
-		switch (style)
+		if (style == ACTUAL)
+			drawActual(g);
+		else
+			drawCached(g);
+	}
+
+	/*
+	 *  Draw the SCALED or TILED background from the cache, making it first
+	 *  if the size of the panel has changed. The copy in video memory may
+	 *  be lost at any time (e.g. when the display mode changes): it is then
+	 *  restored from the cache, or the cache is drawn directly.
+	 */
+	private void drawCached(Graphics g)
+	{
+		Dimension d = getSize();
+
+		if (d.width <= 0 || d.height <= 0) return;
+
+		if (cache == null || cache.getWidth() != d.width || cache.getHeight() != d.height)
 		{
-			case SCALED :
-				drawScaled(g);
-				break;
+			flushCache();
+			//  (an opaque image covering the whole panel is copied without blending)
+			boolean opaque = image instanceof Transparency
+				&& ((Transparency)image).getTransparency() == Transparency.OPAQUE;
+			cache = TonccAssets.blank(d.width, d.height, opaque ? Transparency.OPAQUE : Transparency.TRANSLUCENT);
+			Graphics2D g2 = cache.createGraphics();
+
+			if (style == TILED)
+				drawTiled(g2);
+			else
+				drawScaled(g2);
+
+			g2.dispose();
+		}
+
+		for (int attempt = 0; attempt < 3; attempt++)
+		{
+			int status = volatileCache == null
+				? VolatileImage.IMAGE_INCOMPATIBLE
+				: volatileCache.validate(getGraphicsConfiguration());
+
+			if (status == VolatileImage.IMAGE_INCOMPATIBLE)
+			{
+				if (volatileCache != null)
+					volatileCache.flush();
+
+				//  (createVolatileImage() would make an opaque copy, turning
+				//  the transparent pixels of the cache black)
+				GraphicsConfiguration gc = getGraphicsConfiguration();
+				volatileCache = gc == null ? null
+					: gc.createCompatibleVolatileImage(d.width, d.height, cache.getTransparency());
+
+				if (volatileCache == null) break;
+
+				status = VolatileImage.IMAGE_RESTORED;
+			}
 
-			case TILED  :
-				drawTiled(g);
-				break;
+			if (status == VolatileImage.IMAGE_RESTORED)
+			{
+				Graphics2D g2 = volatileCache.createGraphics();
+				g2.setComposite(AlphaComposite.Clear);
+				g2.fillRect(0, 0, d.width, d.height);
+				g2.setComposite(AlphaComposite.Src);
+				g2.drawImage(cache, 0, 0, null);
+				g2.dispose();
+			}
 
-			case ACTUAL :
-				drawActual(g);
-				break;
+			g.drawImage(volatileCache, 0, 0, null);
 
-			default:
-            	drawScaled(g);
+			if (! volatileCache.contentsLost()) return;
 		}
+
+		//  No video memory copy: draw the cache itself
+
+		g.drawImage(cache, 0, 0, null);
+	}
+
+	/*
+	 *  Drop the cached background, so that it is made again at the next paint
+	 */
+	private void flushCache()
+	{
+		if (volatileCache != null)
+			volatileCache.flush();
+
+		volatileCache = null;
+		cache = null;
 	}
 
 	/*
 	 *  Custom painting code for drawing a SCALED image as the background
 	 */
-	private void drawScaled(Graphics g)
+	private void drawScaled(Graphics2D g)
 	{
 		Dimension d = getSize();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
 		g.drawImage(image, 0, 0, d.width, d.height, null);
 	}
 
 	/*
 	 *  Custom painting code for drawing TILED images as the background
 	 */
-	private void drawTiled(Graphics g)
+	private void drawTiled(Graphics2D g)
 	{
 		   Dimension d = getSize();
 		   int width = image.getWidth( null );
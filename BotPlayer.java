@@ -0,0 +1,68 @@
+package toncc;
+
+import java.util.concurrent.*;
+
+/** A computer player searching its moves with a TonccMcts for a fixed
+ * time, on the thread of an executor. Cancelling a pending move
+ * interrupts its search (see TonccMcts.search()).
+ *
+ * Unless told otherwise, once its move is committed it ponders the
+ * position while the other players are still thinking, and its next
+ * search goes on from the subtree of the joint move they play.
+ *
+ * @license GNU GPL v3
+ * @author Giacomo Parolini
+ */
+public class BotPlayer implements Player {
+
+	/** @param mcts Searches the moves (it may be shared with other bots using the same `executor`)
+	 *  @param millis The time of the search of each move
+	 *  @param executor Runs the searches, off the thread of the caller
+	 */
+	public BotPlayer(final TonccMcts mcts, final long millis, final ExecutorService executor) {
+		this.mcts = mcts;
+		this.millis = millis;
+		this.executor = executor;
+	}
+
+	@Override
+	public CompletableFuture<Direction> requestMove(final byte[] layout, final long state, final King king) {
+		final CompletableFuture<Direction> move = new CompletableFuture<>();
+		final Future<?> search = executor.submit(() -> {
+			try {
+				final int dir = mcts.search(layout, state, king.ordinal(), millis, Long.MAX_VALUE);
+				if (!Thread.currentThread().isInterrupted()) {
+					move.complete(Direction.HEX[dir]);
+					if (pondering)
+						mcts.ponder(layout, state);
+				}
+			} catch (RuntimeException e) {
+				move.completeExceptionally(e);
+			}
+		});
+		move.whenComplete((dir, e) -> {
+			if (move.isCancelled())
+				search.cancel(true);
+		});
+		return move;
+	}
+
+	/** Whether to search in the background while the other players think (default: true) */
+	public void setPondering(final boolean pondering) {
+		this.pondering = pondering;
+		if (!pondering)
+			mcts.stopPondering();
+	}
+
+	@Override
+	public void close() {
+		mcts.stopPondering();
+	}
+
+	/////// PRIVATE METHODS AND FIELDS ///////
+
+	private final TonccMcts mcts;
+	private final long millis;
+	private final ExecutorService executor;
+	private volatile boolean pondering = true;
+}
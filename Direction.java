@@ -11,6 +11,23 @@ public enum Direction {
 	RIGHT,
 	BOTTOM_LEFT,
 	BOTTOM,
-	BOTTOM_RIGHT
-}
+	BOTTOM_RIGHT;
+
+	/** The directions a king can move towards on the Toncc */
+	public static final Direction[] HEX = {
+		TOP_LEFT,
+		TOP_RIGHT,
+		LEFT,
+		RIGHT,
+		BOTTOM_LEFT,
+		BOTTOM_RIGHT
+	};
+	public static final int HEX_NUM = HEX.length;
 
+	/** @return the index of this direction in HEX, or -1 if it's not a valid move on the Toncc */
+	public int hexIndex() {
+		for (int i = 0; i < HEX_NUM; ++i)
+			if (HEX[i] == this) return i;
+		return -1;
+	}
+}
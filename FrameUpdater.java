@@ -0,0 +1,67 @@
+package toncc;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.*;
+
+/** Collects the changes to show on screen into a single update per frame:
+ * the first change posted schedules one task on the EDT, which applies all
+ * the changes posted until then and repaints just the areas they damaged.
+ * A change posted again before the update replaces the previous one, so
+ * e.g. a king moved twice in a turn is moved once. Changes may be posted
+ * from any thread.
+ *
+ * @license GNU GPL v3
+ * @author Giacomo Parolini
+ */
+class FrameUpdater {
+
+	/** Applies `change` at the next update, replacing the change with the same `key`
+	 *  not applied yet. Changes are applied in the order their keys were first posted.
+	 */
+	public synchronized void post(final Object key, final Runnable change) {
+		changes.put(key, change);
+		schedule();
+	}
+
+	/** Repaints the area `area` of `comp` at the next update */
+	public synchronized void damage(final JComponent comp, final Rectangle area) {
+		final Rectangle prev = damaged.get(comp);
+		damaged.put(comp, prev == null ? new Rectangle(area) : prev.union(area));
+		schedule();
+	}
+
+	/** Repaints all of `comp` at the next update */
+	public void damage(final JComponent comp) {
+		damage(comp, new Rectangle(0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE));
+	}
+
+	/////// PRIVATE METHODS AND FIELDS ///////
+
+	private void schedule() {
+		if (scheduled) return;
+		scheduled = true;
+		SwingUtilities.invokeLater(this::update);
+	}
+
+	private void update() {
+		final Collection<Runnable> toApply;
+		final Map<JComponent, Rectangle> toRepaint;
+		synchronized (this) {
+			toApply = changes.values();
+			toRepaint = damaged;
+			changes = new LinkedHashMap<>();
+			damaged = new LinkedHashMap<>();
+			scheduled = false;
+		}
+		for (Runnable change : toApply)
+			change.run();
+		for (Map.Entry<JComponent, Rectangle> e : toRepaint.entrySet())
+			e.getKey().repaint(e.getValue().intersection(new Rectangle(e.getKey().getSize())));
+	}
+
+	/** { key => change } and { component => damaged area }, waiting for the next update (guarded by this) */
+	private Map<Object, Runnable> changes = new LinkedHashMap<>();
+	private Map<JComponent, Rectangle> damaged = new LinkedHashMap<>();
+	private boolean scheduled;
+}
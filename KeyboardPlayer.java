@@ -0,0 +1,45 @@
+package toncc;
+
+import java.util.concurrent.CompletableFuture;
+
+/** A human player sitting at the keyboard: the pending move is completed
+ * by the key listener of the game window calling select().
+ *
+ * @license GNU GPL v3
+ * @author Giacomo Parolini
+ */
+public class KeyboardPlayer implements Player {
+
+	@Override
+	public synchronized CompletableFuture<Direction> requestMove(final byte[] layout, final long state,
+			final King king) {
+		pending = new CompletableFuture<>();
+		return pending;
+	}
+
+	/** Commits `direction` as the move of this turn.
+	 * @return false if no move was being asked for (or it was committed already)
+	 */
+	public boolean select(final Direction direction) {
+		final CompletableFuture<Direction> move;
+		synchronized (this) {
+			move = pending;
+			pending = null;
+		}
+		// (complete it outside the lock: it runs the callbacks of the match)
+		return move != null && move.complete(direction);
+	}
+
+	@Override
+	public void close() {
+		final CompletableFuture<Direction> move;
+		synchronized (this) {
+			move = pending;
+			pending = null;
+		}
+		if (move != null)
+			move.cancel(false);
+	}
+
+	private CompletableFuture<Direction> pending;
+}
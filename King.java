@@ -2,24 +2,10 @@ package toncc;
 
 import java.awt.*;
 import javax.swing.*;
-import javax.imageio.*;
-import java.io.*;
 
 enum King {
 	RED, BLUE, YELLOW;
 
-	King() {
-		final String color = this.toString().toLowerCase();
-		try {
-			sprite = new JLabel(new ImageIcon(
-					ImageIO.read(getClass().getClassLoader()
-					.getResourceAsStream("toncc/images/" + color + ".png"))
-					.getScaledInstance(-1, TonccGame.KING_SIZE, Image.SCALE_SMOOTH)));
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-	}
-		
 	public King getMediumColor() {
 		switch (this) {
 		case RED:
@@ -41,24 +27,16 @@ enum King {
 	}
 
 	public void repaint() {
-		sprite.repaint();
+		getSprite().repaint();
 	}
 
 	public void setBounds(int x, int y, int w, int h) {
-		sprite.setBounds(x, y, w, h);
+		getSprite().setBounds(x, y, w, h);
 	}
 
 	/** @return true if this has a stronger color than `other` on `cellId`, false otherwise */
 	public boolean prevailsOn(final King other, final TonccCell.Id cellId) {
-		King col = null;
-		switch (cellId.toString().charAt(0)) {
-		case 'R': col = King.RED; break;
-		case 'B': col = King.BLUE; break;
-		case 'Y': col = King.YELLOW; break;
-		}
-		return this == col ||
-			(getMediumColor() == col
-			 && other != col);
+		return TonccRules.prevails(ordinal(), other.ordinal(), cellId.ordinal());
 	}
 
 	/** @return true if this king would prevail on 2 colors out of 3 on `other` */
@@ -70,15 +48,21 @@ enum King {
 		return n == 2;
 	}
 
-	public JLabel getSprite() { return sprite; }
-
-	public void move(Direction d) {
-		position.move(d);
+	/** The sprite is loaded lazily, so that the game rules can be used without a display. */
+	public JLabel getSprite() {
+		if (sprite == null) {
+			final Image img = TonccAssets.get(this.toString().toLowerCase(), TonccGame.KING_SIZE);
+			sprite = img == null ? new JLabel(getColorString()) : new JLabel(new ImageIcon(img));
+		}
+		return sprite;
 	}
 
-	public void decTokens() { --tokens; }
-	public int getTokens() { return tokens; }
-	public void setTokens(int n) { tokens = n; }
+	/** Redraws the sprite `height` pixels high */
+	public void setSpriteSize(final int height) {
+		final Image img = TonccAssets.get(this.toString().toLowerCase(), height);
+		if (img != null)
+			getSprite().setIcon(new ImageIcon(img));
+	}
 
 	public Color getColor() {
 		switch (this) {
@@ -98,10 +82,5 @@ enum King {
 		return "";
 	}
 
-	int score;
-	boolean gameOver;
-	TonccCoordinate position = new TonccCoordinate(0, 0);
-
 	private JLabel sprite;
-	private int tokens = TonccGame.INITIAL_TOKENS; 
 }
@@ -0,0 +1,166 @@
+package toncc;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+
+/** A player connected through a socket. The protocol is made of lines of
+ * text: for each move, the game sends
+ *
+ *   MOVE layout_id state king
+ *
+ * (the layout id as given by Toncc.formatId(), the state as a decimal
+ * number, see TonccState, and the king as RED, BLUE or YELLOW) and the
+ * client answers with the name of a Direction (e.g. TOP_LEFT) or its
+ * index in Direction.HEX. The game sends BYE before closing the
+ * connection. Simple enough to play by hand with a telnet client, while
+ * serve() answers on behalf of any local Player.
+ *
+ * @license GNU GPL v3
+ * @author Giacomo Parolini
+ */
+public class NetworkPlayer implements Player {
+
+	public NetworkPlayer(final Socket socket) throws IOException {
+		this.socket = socket;
+		socket.setTcpNoDelay(true);
+		in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+		out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+	}
+
+	/** Waits for a client to connect on `port`, and returns it as a player */
+	public static NetworkPlayer accept(final int port) throws IOException {
+		try (ServerSocket server = new ServerSocket(port)) {
+			return new NetworkPlayer(server.accept());
+		}
+	}
+
+	/** Asks the client for the move; the answer is read on a thread of this player.
+	 * As a pending answer can't be told apart from the next one, cancelling the
+	 * move closes the connection.
+	 */
+	@Override
+	public CompletableFuture<Direction> requestMove(final byte[] layout, final long state, final King king) {
+		final CompletableFuture<Direction> move = new CompletableFuture<>();
+		final long layoutId = Toncc.rank(layout);
+		reader.execute(() -> {
+			try {
+				out.println("MOVE " + Toncc.formatId(layoutId) + " " + state + " " + king);
+				if (out.checkError())
+					throw new IOException("Connection lost");
+				final String line = in.readLine();
+				if (line == null)
+					throw new EOFException("The client disconnected");
+				move.complete(parseDirection(line.trim()));
+			} catch (IOException | IllegalArgumentException e) {
+				move.completeExceptionally(e);
+			}
+		});
+		move.whenComplete((dir, e) -> {
+			if (move.isCancelled())
+				close();
+		});
+		return move;
+	}
+
+	@Override
+	public void close() {
+		out.println("BYE");
+		reader.shutdownNow();
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// (nothing else to release)
+		}
+	}
+
+	/** Connects to a game at `host`:`port` and answers its requests with the moves of
+	 * `player`, until the game says BYE or closes the connection.
+	 */
+	public static void serve(final String host, final int port, final Player player)
+			throws IOException, InterruptedException, ExecutionException {
+		try (Socket socket = new Socket(host, port);
+		     BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+					     StandardCharsets.UTF_8));
+		     PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(),
+					     StandardCharsets.UTF_8), true)) {
+			socket.setTcpNoDelay(true);
+			for (String line; (line = in.readLine()) != null && !line.equals("BYE"); ) {
+				final String[] fields = line.split(" ");
+				if (fields.length != 4 || !fields[0].equals("MOVE"))
+					throw new IOException("Unexpected request: " + line);
+				final byte[] layout = Toncc.unrank(Toncc.parseId(fields[1]));
+				final Direction move = player.requestMove(layout, Long.parseLong(fields[2]),
+						King.valueOf(fields[3])).get();
+				out.println(move.name());
+			}
+		} finally {
+			player.close();
+		}
+	}
+
+	/** Plays a game of a TonccGame started with the -n option */
+	public static void main(String[] args) throws Exception {
+		String host = "localhost";
+		int port = DEFAULT_PORT;
+		long millis = 1000;
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		for (int i = 0; i < args.length; ++i) {
+			switch (args[i]) {
+			case "-h":
+			case "--help":
+				System.err.println("Usage: NetworkPlayer [-a host] [-p port] [-m millis_per_move] [-j threads]");
+				return;
+			case "-a":
+				host = args[++i];
+				break;
+			case "-p":
+				port = Integer.parseInt(args[++i]);
+				break;
+			case "-m":
+				millis = Long.parseLong(args[++i]);
+				break;
+			case "-j":
+				threads = Integer.parseInt(args[++i]);
+				break;
+			}
+		}
+		final TonccMcts mcts = new TonccMcts(threads, TonccPolicy.GREEDY);
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			serve(host, port, new BotPlayer(mcts, millis, executor));
+		} finally {
+			executor.shutdownNow();
+			mcts.shutdown();
+		}
+	}
+
+	public static final int DEFAULT_PORT = 7470;
+
+	/////// PRIVATE METHODS AND FIELDS ///////
+
+	private static Direction parseDirection(final String s) {
+		if (!s.isEmpty() && Character.isDigit(s.charAt(0))) {
+			final int idx = Integer.parseInt(s);
+			if (idx < 0 || idx >= Direction.HEX_NUM)
+				throw new IllegalArgumentException("Invalid direction index: " + s);
+			return Direction.HEX[idx];
+		}
+		final Direction dir = Direction.valueOf(s.toUpperCase());
+		if (dir.hexIndex() < 0)
+			throw new IllegalArgumentException("Not a move on the Toncc: " + s);
+		return dir;
+	}
+
+	private final Socket socket;
+	private final BufferedReader in;
+	private final PrintWriter out;
+	/** Sends the requests and reads the answers, one at a time */
+	private final ExecutorService reader = Executors.newSingleThreadExecutor(r -> {
+		final Thread t = new Thread(r, "NetworkPlayer");
+		t.setDaemon(true);
+		return t;
+	});
+}
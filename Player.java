@@ -0,0 +1,37 @@
+package toncc;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+
+/** Whoever sits on a king's seat: at each turn it is asked for the move
+ * of its king, which it supplies asynchronously (a human pressing a key,
+ * a computer player searching on its own thread, a client answering over
+ * the network...). A TonccMatch resolves the turn as soon as the players
+ * of all the kings still playing have committed their moves.
+ *
+ * @license GNU GPL v3
+ * @author Giacomo Parolini
+ */
+public interface Player {
+
+	/** Asks for the move of `king` in the current turn. The arguments are a snapshot:
+	 * they are not changed by the match while the move is pending.
+	 *  @param layout The placement of the cells, as given by Toncc.getLayout()
+	 *  @param state The packed state of the game (see TonccState)
+	 *  @param king The king to move (which is still playing)
+	 *  @return the move, completed by the player whenever it's ready. The match may
+	 *  cancel it (e.g. if the game is stopped), and the player should then drop it.
+	 */
+	CompletableFuture<Direction> requestMove(byte[] layout, long state, King king);
+
+	/** Releases the resources held by the player, when it leaves its seat */
+	default void close() {}
+
+	/** @return a player moving at once with `policy` (its moves are always ready,
+	 *  so that games among such players run at full speed)
+	 */
+	static Player of(final TonccPolicy policy, final SplittableRandom rng) {
+		return (layout, state, king) -> CompletableFuture.completedFuture(
+				Direction.HEX[policy.selectMove(layout, state, king.ordinal(), rng)]);
+	}
+}
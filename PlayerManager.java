@@ -1,8 +1,6 @@
 package toncc;
 
 import javax.swing.*;
-import javax.imageio.*;
-import java.io.*;
 import java.awt.*;
 import java.util.*;
 
@@ -11,23 +9,13 @@ class PlayerManager extends JPanel {
 	public PlayerManager(final TonccGame tonccGame) {
 
 		this.tonccGame = tonccGame;
-		toncc = tonccGame.toncc;
 
 		// King : Decided : Score : Remaining tokens
 		setLayout(new GridLayout(4, 4, 20, 3));
 		
-		// Load decided/undecided icons
-		try {
-			decidedIcon = new ImageIcon(
-					ImageIO.read(getClass().getClassLoader()
-					.getResourceAsStream("toncc/images/decided.png")));
-			undecidedIcon = new ImageIcon(
-					ImageIO.read(getClass().getClassLoader()
-					.getResourceAsStream("toncc/images/undecided.png")));
-		} catch(IOException e) {
-			System.err.println("[PlayerManager] Error loading image:");
-			e.printStackTrace();
-		}
+		// Decided/undecided icons
+		decidedIcon = icon("decided", -1);
+		undecidedIcon = icon("undecided", -1);
 
 		add(new JLabel("KING"));
 		add(new JLabel("MOVED"));
@@ -35,20 +23,12 @@ class PlayerManager extends JPanel {
 		add(new JLabel("TOKENS"));
 
 		for(King king : tonccGame.kings) {
-			// Load kings' sprites
-			try {
-				add(new JLabel(new ImageIcon(
-					ImageIO.read(getClass().getClassLoader()
-					.getResourceAsStream("toncc/images/" + king.getColorString().toLowerCase() + ".png"))
-					.getScaledInstance(-1, TonccGame.KING_SIZE, Image.SCALE_SMOOTH))));
-			} catch(IOException e) {
-				System.err.println("[PlayerManager] Error loading image:");
-				e.printStackTrace();
-			}
+			// Kings' sprites
+			add(new JLabel(icon(king.getColorString().toLowerCase(), TonccGame.KING_SIZE)));
 			// Add labels to the gridlayout
 			scoreLabels.put(king, new JLabel("<html><font color=\"blue\">0</font></html>"));
 			scoreLabels.get(king).setFont(new Font("Sans", Font.BOLD, 18));
-			tokenLabels.put(king, new JLabel("<html><font color=\"blue\">"+TonccGame.INITIAL_TOKENS+"</font></html>"));
+			tokenLabels.put(king, new JLabel("<html><font color=\"blue\">"+TonccEngine.INITIAL_TOKENS+"</font></html>"));
 			tokenLabels.get(king).setFont(new Font("Sans", Font.BOLD, 18));
 			moveLabels.put(king, new JLabel(undecidedIcon));
 			add(moveLabels.get(king));
@@ -57,101 +37,40 @@ class PlayerManager extends JPanel {
 		}
 	}
 
-	void updateScore() {
-		for(King k : tonccGame.kings) {
-			if (!k.gameOver)
-				updateScore(k);
-		}
-	}
-
-	void updateScore(final King king) {
-		int score = 0;
-		for(Set<TonccCell.Id> kingdom : toncc.getKingdoms(king)) {
-			for(TonccCell.Id id : kingdom) {
-				switch(id.toString().charAt(0)) {
-				case 'B':
-					if(king == King.BLUE) score += 1;
-					else if(king == King.RED) score += 2;
-					else score += 3;
-					break;
-				case 'R':
-					if(king == King.RED) score += 1;
-					else if(king == King.YELLOW) score += 2;
-					else score += 3;
-					break;
-				case 'Y':
-					if(king == King.YELLOW) score += 1;
-					else if(king == King.BLUE) score += 2;
-					else score += 3;
-					break;
-				}
-			}
-		}
-		king.score = score;
-		JLabel label = scoreLabels.get(king);
-		label.setText("<html><font color=\"blue\">"+score+"</font></html>");
-		SwingUtilities.invokeLater(() -> label.repaint());
+	/* The labels are changed at the next update of the game's screen, which
+	 * repaints just them (see FrameUpdater); each label is its own key.
+	 */
 
-		// Update number of used tokens
-		for(King k : tonccGame.kings) {
-			JLabel lab = tokenLabels.get(k);
-			lab.setText("<html><font color=\"blue\">"+k.getTokens()+"</font></html>");
-			SwingUtilities.invokeLater(() -> lab.repaint());
-		}
+	/** Updates the score and tokens labels of `king` */
+	void updateScore(final King king, final int score, final int tokens) {
+		final JLabel label = scoreLabels.get(king);
+		tonccGame.updater.post(label, () -> label.setText("<html><font color=\"blue\">"+score+"</font></html>"));
+		final JLabel lab = tokenLabels.get(king);
+		tonccGame.updater.post(lab, () -> lab.setText("<html><font color=\"blue\">"+tokens+"</font></html>"));
 	}
 
-	public void finalizeScore(final King king, final int extra) {
-		updateScore(king);
-		king.score += extra;
-		scoreLabels.get(king).setText("<html><font color=\"blue\">"+king.score+"</font></html>");
+	/** Shows that `king` has committed its move for this turn */
+	void moveCommitted(final King king) {
+		final JLabel label = moveLabels.get(king);
+		tonccGame.updater.post(label, () -> label.setIcon(decidedIcon));
 	}
 
-	void selectMove(final King king, final Direction direction) {
-		selectedMove.put(king, direction);
-		if(selectedMove.size() == tonccGame.activeKings.size()) {
-			moveKings();
-			tonccGame.checkCaptures();
-			tonccGame.checkKingsGameOver();
-		} else {
-			moveLabels.get(king).setIcon(decidedIcon);
-			SwingUtilities.invokeLater(() -> moveLabels.get(king).repaint());
-		}
+	/** Shows all kings as undecided, as a new turn begins */
+	void resetMoves() {
+		for (JLabel label : moveLabels.values())
+			tonccGame.updater.post(label, () -> label.setIcon(undecidedIcon));
 	}
 
-	private void moveKings() {
-		for(Map.Entry<King, Direction> pair : selectedMove.entrySet()) {
-			final King king = pair.getKey();
-			final Direction d = pair.getValue();
-			final int kidx = Arrays.binarySearch(tonccGame.kings, king);
-			king.move(d);
-		}
-		selectedMove.clear();
-		SwingUtilities.invokeLater(() -> {
-			for (Map.Entry<King, JLabel> entry : moveLabels.entrySet()) {
-				entry.getValue().setIcon(undecidedIcon);
-
-				// Move king's sprite
-				final King king = entry.getKey();
-				final int idx = king.position.asCellIndex();
-				final Rectangle bounds = tonccGame.cells.get(idx).getBounds();
-				final int kidx = Arrays.binarySearch(tonccGame.kings, king);
-				if (!king.gameOver) {
-					king.setBounds(
-							bounds.x + TonccGame.kingXOffset[kidx],
-							bounds.y + TonccGame.kingYOffset[kidx],
-							TonccGame.KING_SIZE, TonccGame.KING_SIZE);
-					king.repaint();
-				}
-			}
-		});
+	/** @return the icon of the image `name` at `height` (see TonccAssets), or null */
+	private static ImageIcon icon(final String name, final int height) {
+		final Image img = TonccAssets.get(name, height);
+		return img == null ? null : new ImageIcon(img);
 	}
 
 	private final TonccGame tonccGame;
-	private final Toncc toncc;
 	private ImageIcon decidedIcon, undecidedIcon;
 
 	private Map<King, JLabel> scoreLabels = new EnumMap<>(King.class),
 		                  tokenLabels = new EnumMap<>(King.class),
 				  moveLabels  = new EnumMap<>(King.class);
-	private Map<King, Direction> selectedMove = new EnumMap<>(King.class);
 }
@@ -31,22 +31,109 @@ public class Toncc {
 		TonccCell.Id.RI
 	};
 	public static final int TONCC_CELLS_NUM = MIND.length;
+	/** { n => n! } for n up to TONCC_CELLS_NUM */
+	private static final long[] FACTORIALS = new long[TONCC_CELLS_NUM + 1];
+	static {
+		FACTORIALS[0] = 1;
+		for(int n = 1; n <= TONCC_CELLS_NUM; ++n)
+			FACTORIALS[n] = FACTORIALS[n - 1] * n;
+	}
+	/** Number of different layouts of the table (18!) */
+	public static final long LAYOUTS_NUM = FACTORIALS[TONCC_CELLS_NUM];
+
+	/** The kingdoms are the triples of consecutive cells of the MIND,
+	 * except {5,6,7}, {11,12,13} and {17,0,1}: this is the MIND index of
+	 * the first cell of each kingdom.
+	 */
+	public static final int[] KINGDOM_START = { 0, 1, 2, 3, 4, 6, 7, 8, 9, 10, 12, 13, 14, 15, 16 };
+	public static final int KINGDOMS_NUM = KINGDOM_START.length;
+	/** The cells of each kingdom, as bit 2*i for the i-th cell of the MIND (see TonccState.ownerMask()) */
+	public static final long[] KINGDOM_CELLS = new long[KINGDOMS_NUM];
+	/** { MIND index of a cell => bitmask of the kingdoms containing it } */
+	public static final int[] CELL_KINGDOMS = new int[TONCC_CELLS_NUM];
+	static {
+		for(int k = 0; k < KINGDOMS_NUM; ++k) {
+			for(int j = 0; j < 3; ++j) {
+				final int cell = (KINGDOM_START[k] + j) % TONCC_CELLS_NUM;
+				KINGDOM_CELLS[k] |= 1L << (cell << 1);
+				CELL_KINGDOMS[cell] |= 1 << k;
+			}
+		}
+	}
 
 	/** Create a random Toncc table. */
 	public Toncc() {
-		TonccCell.Id[] randCells = getShuffled(MIND);
-		for(int i = 0; i < randCells.length; ++i) 
-			cells[i] = new TonccCell(randCells[i]);
+		this(new SplittableRandom());
+	}
+
+	/** Create a random Toncc table, shuffling the cells with `rng`. */
+	public Toncc(final SplittableRandom rng) {
+		this(getShuffled(MIND, rng));
+	}
+
+	/** Create a Toncc table with the cells of the MIND placed in the order of `ids`. */
+	private Toncc(final TonccCell.Id[] ids) {
+		for(int i = 0; i < ids.length; ++i) {
+			cells[i] = new TonccCell(ids[i], this);
+			cellsById[ids[i].ordinal()] = cells[i];
+		}
+		for(int i = 0; i < layout.length; ++i)
+			layout[i] = (byte)(i == TonccEngine.MIND_INDEX
+				? TonccCell.Id.MIND.ordinal()
+				: cells[i < TonccEngine.MIND_INDEX ? i : i - 1].id().ordinal());
+	}
+
+	/** @return a random table: the same seed always gives the same table */
+	public static Toncc fromSeed(final long seed) {
+		return new Toncc(new SplittableRandom(seed));
+	}
+
+	/** @return the table with the given layout (as given by getLayout()) */
+	public static Toncc fromLayout(final byte[] layout) {
+		if(layout.length != TonccCoordinate.CELLS_NUM || layout[TonccEngine.MIND_INDEX] != TonccCell.Id.MIND.ordinal())
+			throw new IllegalArgumentException("Invalid layout: " + Arrays.toString(layout));
+		final TonccCell.Id[] ids = new TonccCell.Id[TONCC_CELLS_NUM];
+		int used = 0;
+		for(int i = 0, n = 0; i < layout.length; ++i) {
+			if(i == TonccEngine.MIND_INDEX) continue;
+			final int id = layout[i];
+			if(id < 0 || id >= TONCC_CELLS_NUM || (used & (1 << id)) != 0)
+				throw new IllegalArgumentException("Invalid layout: " + Arrays.toString(layout));
+			used |= 1 << id;
+			ids[n++] = MIND[id];
+		}
+		return new Toncc(ids);
+	}
+
+	/** @return the table whose layout has the given id (see getId()) */
+	public static Toncc fromId(final long id) {
+		return fromLayout(unrank(id));
+	}
+
+	/** @return the id of this table's layout: its rank among all the layouts (see rank()) */
+	public final long getId() { return rank(layout); }
+
+	/** @return the compact textual form of a layout id (at most 11 digits and letters) */
+	public static String formatId(final long id) {
+		return Long.toString(id, Character.MAX_RADIX).toUpperCase();
+	}
+
+	/** @return the layout id written as by formatId() */
+	public static long parseId(final String s) {
+		final long id = Long.parseLong(s, Character.MAX_RADIX);
+		if(id < 0 || id >= LAYOUTS_NUM)
+			throw new IllegalArgumentException("Invalid layout id: " + s);
+		return id;
 	}
 
 	public final TonccCell[] getCells() { return cells; }
+	/** @return the ordinal of the TonccCell.Id on each cell of the table, indexed as
+	 *  by TonccCoordinate.asCellIndex() (the array is shared: don't modify it)
+	 */
+	public final byte[] getLayout() { return layout; }
 	public final TonccCell getCell(final int i) { return cells[i]; }
-	public final TonccCell getCell(final TonccCell.Id id) {
-		for (TonccCell cell : cells)
-			if (cell.id() == id)
-				return cell;
-		return null;
-	}
+	/** @return the cell with the given id, or null for the MIND */
+	public final TonccCell getCell(final TonccCell.Id id) { return cellsById[id.ordinal()]; }
 	public final int getPosition(final String id) {
 		for(int i = 0; i < cells.length; ++i)
 			if(cells[i].id().equals(id)) return i;
@@ -56,53 +143,141 @@ public class Toncc {
 	/** @return map { owner: [ { cell1, cell2, ...}, { cell1, ... }, ... ], ... } of kingdoms */
 	public final Map<King, List<Set<TonccCell.Id>>> getKingdoms() {
 		Map<King, List<Set<TonccCell.Id>>> kingdoms = new EnumMap<>(King.class);
-		Set<King> owners = EnumSet.noneOf(King.class);
-		for(TonccCell cell : cells) {
-			if(cell.getOwner() != null) {
-				owners.add(cell.getOwner());
-			}
+		for(King owner : King.values()) {
+			if(owned[owner.ordinal()] != 0)
+				kingdoms.put(owner, getKingdoms(owner));
 		}
-		for(King owner : owners) 
-			kingdoms.put(owner, getKingdoms(owner));
-
 		return kingdoms;
 	}
 
 	public final List<Set<TonccCell.Id>> getKingdoms(final King owner) {
 		List<Set<TonccCell.Id>> kingdoms = new ArrayList<>();
-		// for each possible kingdom, check if it's entirely owned by someone
-		for(int i = 0; i < TONCC_CELLS_NUM - 1; ++i) {
-			// {5,6,7}, {11,12,13} and {17,0,1} are not real kingdoms!
-			if(i == 5 || i == 11 || i == 17) continue;
-			boolean owned = true;
-			for(int j = 0; j < 3; ++j) {
-				final King cellOwner = getCell(MIND[(i+j) % TONCC_CELLS_NUM]).getOwner();
-				if(cellOwner == null || cellOwner != owner) {
-					owned = false;
-					break;
-				}
-			}
-			if(owned) {
-				kingdoms.add(EnumSet.of(MIND[i], MIND[i + 1], MIND[(i + 2) % TONCC_CELLS_NUM]));
-			}
+		for(int mask = kingdomsMask[owner.ordinal()]; mask != 0; mask &= mask - 1) {
+			final int i = KINGDOM_START[Integer.numberOfTrailingZeros(mask)];
+			kingdoms.add(EnumSet.of(MIND[i], MIND[i + 1], MIND[(i + 2) % TONCC_CELLS_NUM]));
 		}
 		return kingdoms;
 	}
 
+	/** @return the bitmask of the kingdoms entirely owned by `owner`
+	 *  (bit k set for the kingdom starting at KINGDOM_START[k])
+	 */
+	public final int getKingdomsMask(final King owner) { return kingdomsMask[owner.ordinal()]; }
+
 	/** Returns number of cells owned by `owner` */
 	public final int getNOwned(final King owner) {
-		int n = 0;
-		for(final TonccCell cell : cells) {
-			if(cell.getOwner() != null && cell.getOwner() == owner)
-				++n;
+		return Long.bitCount(owned[owner.ordinal()]);
+	}
+
+	/** @return the bitmask of all the kingdoms entirely contained in `owned`
+	 *  (bit 2*i set for the i-th cell of the MIND)
+	 */
+	public static int kingdoms(final long owned) {
+		int mask = 0;
+		for(int k = 0; k < KINGDOMS_NUM; ++k) {
+			if((owned & KINGDOM_CELLS[k]) == KINGDOM_CELLS[k])
+				mask |= 1 << k;
+		}
+		return mask;
+	}
+
+	/** @return the bitmask of the kingdoms containing `cell` which are
+	 *  entirely contained in `owned` (at most 3 kingdoms are checked)
+	 */
+	public static int completedKingdoms(final long owned, final int cell) {
+		int mask = 0;
+		for(int m = CELL_KINGDOMS[cell]; m != 0; m &= m - 1) {
+			final int k = Integer.numberOfTrailingZeros(m);
+			if((owned & KINGDOM_CELLS[k]) == KINGDOM_CELLS[k])
+				mask |= 1 << k;
+		}
+		return mask;
+	}
+
+	/** @return the rank of `layout` (as given by getLayout()) among all the
+	 *  layouts in lexicographic order of the ids on the cells other than the MIND
+	 */
+	public static long rank(final byte[] layout) {
+		long rank = 0;
+		int used = 0;
+		for(int i = 0, n = 0; i < layout.length; ++i) {
+			if(i == TonccEngine.MIND_INDEX) continue;
+			final int id = layout[i];
+			// Lehmer code: the number of smaller ids which are still unused
+			final int smaller = id - Integer.bitCount(used & ((1 << id) - 1));
+			rank += smaller * FACTORIALS[TONCC_CELLS_NUM - 1 - n++];
+			used |= 1 << id;
+		}
+		return rank;
+	}
+
+	/** @return the layout with rank `rank` in [0, LAYOUTS_NUM), the inverse of rank() */
+	public static byte[] unrank(long rank) {
+		if(rank < 0 || rank >= LAYOUTS_NUM)
+			throw new IllegalArgumentException("Invalid layout rank: " + rank);
+		final byte[] layout = new byte[TonccCoordinate.CELLS_NUM];
+		int used = 0;
+		for(int i = 0, n = 0; i < layout.length; ++i) {
+			if(i == TonccEngine.MIND_INDEX) {
+				layout[i] = (byte)TonccCell.Id.MIND.ordinal();
+				continue;
+			}
+			final long f = FACTORIALS[TONCC_CELLS_NUM - 1 - n++];
+			final int id = nthUnused(used, (int)(rank / f));
+			rank %= f;
+			layout[i] = (byte)id;
+			used |= 1 << id;
+		}
+		return layout;
+	}
+
+	/** @return the id on the cell with index `idx` in the layout with rank `rank`,
+	 *  i.e. unrank(rank)[idx] without building the whole layout
+	 */
+	public static int idAt(long rank, final int idx) {
+		if(rank < 0 || rank >= LAYOUTS_NUM)
+			throw new IllegalArgumentException("Invalid layout rank: " + rank);
+		if(idx == TonccEngine.MIND_INDEX)
+			return TonccCell.Id.MIND.ordinal();
+		int used = 0;
+		for(int i = 0, n = 0; ; ++i) {
+			if(i == TonccEngine.MIND_INDEX) continue;
+			final long f = FACTORIALS[TONCC_CELLS_NUM - 1 - n++];
+			final int id = nthUnused(used, (int)(rank / f));
+			if(i == idx) return id;
+			rank %= f;
+			used |= 1 << id;
+		}
+	}
+
+	/** Called by the cells of this table when their owner changes:
+	 * keeps the owned cells and the kingdoms of each king up to date.
+	 */
+	void ownerChanged(final TonccCell.Id id, final King oldOwner, final King newOwner) {
+		final int cell = id.ordinal();
+		if(oldOwner != null) {
+			owned[oldOwner.ordinal()] &= ~(1L << (cell << 1));
+			kingdomsMask[oldOwner.ordinal()] &= ~CELL_KINGDOMS[cell];
+		}
+		if(newOwner != null) {
+			final int k = newOwner.ordinal();
+			owned[k] |= 1L << (cell << 1);
+			kingdomsMask[k] |= completedKingdoms(owned[k], cell);
 		}
-		return n;
 	}
 
 	/////// PRIVATE METHODS AND FIELDS ///////
 
-  	private static <T> T[] getShuffled(final T[] arr) {
-		Random rng = new Random();
+	/** @return the `k`-th (from 0) id not in the bitmask `used` */
+	private static int nthUnused(int used, int k) {
+		int id = -1;
+		for(; k >= 0; --k) {
+			do ++id; while((used & (1 << id)) != 0);
+		}
+		return id;
+	}
+
+  	private static <T> T[] getShuffled(final T[] arr, final SplittableRandom rng) {
 		T[] newarr = Arrays.copyOf(arr, arr.length);
 		for(int i = newarr.length - 1; i > 0; --i) {
 			int index = rng.nextInt(i + 1);
@@ -114,4 +289,11 @@ public class Toncc {
 	}
 
 	private TonccCell[] cells = new TonccCell[TONCC_CELLS_NUM];
+	/** { id ordinal => cell } (the MIND's entry is null) */
+	private final TonccCell[] cellsById = new TonccCell[TonccCell.Id.values().length];
+	/** { king ordinal => cells owned, as bit 2*i for the i-th cell of the MIND } */
+	private final long[] owned = new long[King.values().length];
+	/** { king ordinal => bitmask of the kingdoms it owns } */
+	private final int[] kingdomsMask = new int[King.values().length];
+	private final byte[] layout = new byte[TONCC_CELLS_NUM + 1];
 }
@@ -0,0 +1,186 @@
+package toncc;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/** Estimates the outcome of a position by playing it out many times with
+ * a TonccPolicy, on all threads, until told to stop. The estimates are
+ * refined as the playouts go on: each thread adds its results to them in
+ * small batches, and snapshot() may be called at any time, from any
+ * thread, to read them. Starting the analysis of another position drops
+ * the playouts of the previous one within a playout.
+ *
+ * @license GNU GPL v3
+ * @author Giacomo Parolini
+ */
+public class TonccAnalysis {
+
+	/** Playouts lasting longer than this many turns are not counted */
+	public static final int MAX_PLAYOUT_TURNS = TonccMcts.MAX_PLAYOUT_TURNS;
+	/** z-score of the confidence intervals (95%) */
+	public static final double Z = 1.96;
+
+	/** The results of the playouts of a position so far */
+	public static class Estimate {
+		public final long[] wins = new long[TonccState.KINGS_NUM];
+		public final long[] scores = new long[TonccState.KINGS_NUM];
+		public final long[] squaredScores = new long[TonccState.KINGS_NUM];
+		/** Finished playouts (draws included), and playouts cut short */
+		public long games, draws, aborted;
+
+		public double winRate(final King king) {
+			return rate(wins[king.ordinal()]);
+		}
+
+		public double drawRate() {
+			return rate(draws);
+		}
+
+		/** @return the half width of the confidence interval of winRate(king) */
+		public double winRateError(final King king) {
+			return rateError(wins[king.ordinal()]);
+		}
+
+		public double drawRateError() {
+			return rateError(draws);
+		}
+
+		/** @return the expected final score of `king` */
+		public double meanScore(final King king) {
+			return games == 0 ? 0 : (double)scores[king.ordinal()] / games;
+		}
+
+		/** @return the half width of the confidence interval of meanScore(king) */
+		public double meanScoreError(final King king) {
+			if (games < 2) return Double.POSITIVE_INFINITY;
+			final double mean = meanScore(king);
+			final double var = Math.max(0, ((double)squaredScores[king.ordinal()] / games - mean * mean)
+					* games / (games - 1));
+			return Z * Math.sqrt(var / games);
+		}
+
+		private double rate(final long n) {
+			return games == 0 ? 0 : (double)n / games;
+		}
+
+		private double rateError(final long n) {
+			if (games == 0) return Double.POSITIVE_INFINITY;
+			final double p = rate(n);
+			return Z * Math.sqrt(p * (1 - p) / games);
+		}
+
+		private void add(final Estimate other) {
+			for (int k = 0; k < TonccState.KINGS_NUM; ++k) {
+				wins[k] += other.wins[k];
+				scores[k] += other.scores[k];
+				squaredScores[k] += other.squaredScores[k];
+			}
+			games += other.games;
+			draws += other.draws;
+			aborted += other.aborted;
+		}
+
+		private void clear() {
+			Arrays.fill(wins, 0);
+			Arrays.fill(scores, 0);
+			Arrays.fill(squaredScores, 0);
+			games = draws = aborted = 0;
+		}
+	}
+
+	/** @param threads Number of threads playing in parallel
+	 *  @param policy The policy used by all kings in the playouts
+	 */
+	public TonccAnalysis(final int threads, final TonccPolicy policy) {
+		this.threads = threads;
+		this.policy = policy;
+		pool = Executors.newFixedThreadPool(threads, r -> {
+			final Thread t = new Thread(r, "TonccAnalysis");
+			t.setDaemon(true);
+			t.setPriority(Thread.MIN_PRIORITY);
+			return t;
+		});
+	}
+
+	/** Drops the current analysis, if any, and starts analyzing the given position */
+	public synchronized void start(final byte[] layout, final long state) {
+		final long gen = ++generation;
+		total.clear();
+		if (TonccState.isOver(state))
+			return;
+		final long seed = seeds.nextLong();
+		for (int i = 0; i < threads; ++i) {
+			final SplittableRandom rng = new SplittableRandom(seed + i);
+			pool.execute(() -> work(gen, layout, state, rng));
+		}
+	}
+
+	/** Drops the current analysis, if any */
+	public synchronized void stop() {
+		++generation;
+	}
+
+	/** @return a copy of the estimate of the position being analyzed (or last analyzed) */
+	public synchronized Estimate snapshot() {
+		final Estimate copy = new Estimate();
+		copy.add(total);
+		return copy;
+	}
+
+	/** Stops the threads for good */
+	public void shutdown() {
+		stop();
+		pool.shutdownNow();
+	}
+
+	/////// PRIVATE METHODS AND FIELDS ///////
+
+	/** Playouts played by a thread before adding them to the total */
+	private static final int BATCH = 64;
+
+	private void work(final long gen, final byte[] layout, final long state, final SplittableRandom rng) {
+		final Estimate batch = new Estimate();
+		while (generation == gen) {
+			for (int n = 0; n < BATCH && generation == gen; ++n)
+				playout(layout, state, rng, batch);
+			synchronized (this) {
+				if (generation != gen) return;
+				total.add(batch);
+			}
+			batch.clear();
+		}
+	}
+
+	private void playout(final byte[] layout, long s, final SplittableRandom rng, final Estimate out) {
+		for (int turn = 0; turn < MAX_PLAYOUT_TURNS && !TonccState.isOver(s); ++turn) {
+			final int red = TonccState.isGameOver(s, 0) ? 0 : policy.selectMove(layout, s, 0, rng);
+			final int blue = TonccState.isGameOver(s, 1) ? 0 : policy.selectMove(layout, s, 1, rng);
+			final int yellow = TonccState.isGameOver(s, 2) ? 0 : policy.selectMove(layout, s, 2, rng);
+			s = TonccState.applyTurn(layout, s, red, blue, yellow);
+		}
+		if (!TonccState.isOver(s)) {
+			++out.aborted;
+			return;
+		}
+		++out.games;
+		final King winner = TonccState.winner(s);
+		if (winner == null)
+			++out.draws;
+		else
+			++out.wins[winner.ordinal()];
+		for (int k = 0; k < TonccState.KINGS_NUM; ++k) {
+			final long score = TonccState.score(s, k);
+			out.scores[k] += score;
+			out.squaredScores[k] += score * score;
+		}
+	}
+
+	private final int threads;
+	private final TonccPolicy policy;
+	private final ExecutorService pool;
+	private final SplittableRandom seeds = new SplittableRandom();
+	/** Counts the positions analyzed: the workers of older ones stop */
+	private volatile long generation;
+	/** The results of the current position (guarded by this) */
+	private final Estimate total = new Estimate();
+}
@@ -0,0 +1,146 @@
+package toncc;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** The images of the game, each decoded exactly once from toncc/images
+ * and shared by everyone drawing it. preload() decodes them all in
+ * parallel at startup. Scaled copies are made once per size, in the
+ * format of the screen, with scale(): those are what gets painted.
+ *
+ * @license GNU GPL v3
+ * @author Giacomo Parolini
+ */
+final class TonccAssets {
+
+	/** All the images used by the game: the cells, the kings and the rest */
+	static final String[] IMAGES;
+	static {
+		final java.util.List<String> images = new ArrayList<>();
+		for (TonccCell.Id id : TonccCell.Id.values())
+			images.add(id.toString());
+		for (King king : King.values())
+			images.add(king.toString().toLowerCase());
+		images.addAll(Arrays.asList("bg", "decided", "undecided"));
+		IMAGES = images.toArray(new String[0]);
+	}
+
+	private TonccAssets() {}
+
+	/** Decodes all the images on all cores. Does nothing the second time. */
+	static synchronized void preload() {
+		if (preloaded) return;
+		Arrays.stream(IMAGES).parallel().forEach(TonccAssets::get);
+		preloaded = true;
+	}
+
+	/** @return the image `name` (e.g. "RI" or "red"), decoded on the first call, or null
+	 *  if it couldn't be loaded
+	 */
+	static BufferedImage get(final String name) {
+		return ORIGINALS.computeIfAbsent(name, TonccAssets::decode);
+	}
+
+	/** @return a copy of the image `name`, `height` pixels high (or at its natural size if
+	 *  `height` is not positive) in the format of the screen, made on the first call
+	 */
+	static BufferedImage get(final String name, final int height) {
+		final String key = name + '@' + Math.max(height, 0);
+		synchronized (SCALED) {
+			final BufferedImage scaled = SCALED.get(key);
+			if (scaled != null) return scaled;
+		}
+		final BufferedImage img = get(name);
+		if (img == null) return null;
+		// (scaled outside the lock: two threads may scale the same image at once, and
+		// the first copy stored is kept)
+		final BufferedImage scaled = height <= 0 || height == img.getHeight() ? compatible(img) : scale(img, height);
+		synchronized (SCALED) {
+			final BufferedImage prev = SCALED.putIfAbsent(key, scaled);
+			return prev != null ? prev : scaled;
+		}
+	}
+
+	/** @return a copy of `src` scaled to `height` pixels (keeping its proportions) in the format
+	 *  of the screen. Shrinking goes by halves with bilinear filtering, so that every pixel of
+	 *  `src` counts, which looks as smooth as Image.SCALE_SMOOTH at a fraction of the cost.
+	 */
+	static BufferedImage scale(final BufferedImage src, final int height) {
+		final int width = Math.max(1, src.getWidth() * height / src.getHeight());
+		Image img = src;
+		int w = src.getWidth(), h = src.getHeight();
+		while (true) {
+			w = w / 2 > width ? w / 2 : width;
+			h = h / 2 > height ? h / 2 : height;
+			final boolean last = w == width && h == height;
+			final BufferedImage step = last ? blank(w, h) : new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+			final Graphics2D g = step.createGraphics();
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			g.drawImage(img, 0, 0, w, h, null);
+			g.dispose();
+			if (last)
+				return step;
+			img = step;
+		}
+	}
+
+	/** @return a copy of `img` in the format of the screen */
+	static BufferedImage compatible(final Image img) {
+		final BufferedImage out = blank(img.getWidth(null), img.getHeight(null));
+		final Graphics2D g = out.createGraphics();
+		g.drawImage(img, 0, 0, null);
+		g.dispose();
+		return out;
+	}
+
+	/** @return a transparent image in the format of the screen (or ARGB when there is no screen) */
+	static BufferedImage blank(final int w, final int h) {
+		return blank(w, h, Transparency.TRANSLUCENT);
+	}
+
+	/** @return an image in the format of the screen with the given Transparency (or ARGB/RGB when
+	 *  there is no screen)
+	 */
+	static BufferedImage blank(final int w, final int h, final int transparency) {
+		if (GraphicsEnvironment.isHeadless())
+			return new BufferedImage(w, h, transparency == Transparency.OPAQUE
+					? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+		return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+			.getDefaultConfiguration().createCompatibleImage(w, h, transparency);
+	}
+
+	/////// PRIVATE METHODS AND FIELDS ///////
+
+	/** Scaled images kept at most: the ones used least recently are dropped first, so
+	 *  that the sizes seen while a window is resized don't pile up
+	 */
+	private static final int MAX_SCALED = 256;
+
+	/** { name => decoded image } */
+	private static final Map<String, BufferedImage> ORIGINALS = new ConcurrentHashMap<>();
+	/** { name@height => scaled image }, in access order (guarded by itself) */
+	private static final Map<String, BufferedImage> SCALED = new LinkedHashMap<String, BufferedImage>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, BufferedImage> eldest) {
+			return size() > MAX_SCALED;
+		}
+	};
+	private static boolean preloaded;
+
+	private static BufferedImage decode(final String name) {
+		try (InputStream in = TonccAssets.class.getClassLoader()
+				.getResourceAsStream("toncc/images/" + name + ".png")) {
+			return ImageIO.read(in);
+		} catch (IOException | IllegalArgumentException e) {
+			System.err.println("[TonccAssets] Error! Couldn't load image " + name);
+			e.printStackTrace();
+			return null;
+		}
+	}
+}
@@ -0,0 +1,213 @@
+package toncc;
+
+import java.lang.management.*;
+import java.util.*;
+
+/** Microbenchmarks of the hot paths of the rules: each benchmark runs
+ * for some warmup iterations, then for some measured iterations of fixed
+ * duration, and reports its throughput and the bytes it allocates per
+ * operation (as measured by the JVM for the benchmarking thread).
+ * The inputs are precomputed from random games, so that generating them
+ * is not measured.
+ *
+ * Usage: TonccBench [-w warmup_iterations] [-i iterations] [-t iteration_ms] [name_filter]
+ *
+ * @license GNU GPL v3
+ * @author Giacomo Parolini
+ */
+public class TonccBench {
+
+	/** A benchmarked operation: `i` is the invocation counter, the result is consumed */
+	private interface Op {
+		long run(int i);
+	}
+
+	public static void main(String[] args) {
+		for (int i = 0; i < args.length; ++i) {
+			switch (args[i]) {
+			case "-h":
+			case "--help":
+				System.err.println("Usage: TonccBench [-w warmup_iterations] [-i iterations] "
+						+ "[-t iteration_ms] [name_filter]");
+				return;
+			case "-w":
+				warmupIterations = Integer.parseInt(args[++i]);
+				break;
+			case "-i":
+				iterations = Integer.parseInt(args[++i]);
+				break;
+			case "-t":
+				iterationMillis = Integer.parseInt(args[++i]);
+				break;
+			default:
+				filter = args[i];
+			}
+		}
+		if (!ALLOCATION.isThreadAllocatedMemorySupported())
+			System.err.println("[TonccBench] Allocation measurement is not supported by this JVM");
+		else
+			ALLOCATION.setThreadAllocatedMemoryEnabled(true);
+
+		// Sample positions from random games
+		final SplittableRandom rng = new SplittableRandom(42);
+		final byte[][] layouts = new byte[INPUTS][];
+		final long[] states = new long[INPUTS];
+		final Toncc[] tonccs = new Toncc[INPUTS];
+		final int[] moves = new int[INPUTS];
+		for (int i = 0; i < INPUTS; ++i) {
+			tonccs[i] = new Toncc(rng);
+			layouts[i] = tonccs[i].getLayout();
+			long s = TonccState.INITIAL;
+			final int turns = rng.nextInt(12);
+			for (int t = 0; t < turns && !TonccState.isOver(s); ++t) {
+				s = TonccState.applyTurn(layouts[i], s,
+						rng.nextInt(Direction.HEX_NUM), rng.nextInt(Direction.HEX_NUM),
+						rng.nextInt(Direction.HEX_NUM));
+			}
+			states[i] = s;
+			for (int cell = 0; cell < Toncc.TONCC_CELLS_NUM; ++cell) {
+				final int owner = TonccState.owner(s, cell);
+				if (owner != 0)
+					tonccs[i].getCell(Toncc.MIND[cell]).setOwner(King.values()[owner - 1]);
+			}
+			moves[i] = rng.nextInt(TonccCoordinate.CELLS_NUM) * Direction.HEX_NUM
+				+ rng.nextInt(Direction.HEX_NUM);
+		}
+		final TonccCoordinate[] coords = new TonccCoordinate[INPUTS];
+		for (int i = 0; i < INPUTS; ++i)
+			coords[i] = TonccCoordinate.fromCellIndex(moves[i] / Direction.HEX_NUM);
+		final TonccCell.Id[] ids = new TonccCell.Id[INPUTS];
+		final int[] contests = new int[INPUTS];
+		for (int i = 0; i < INPUTS; ++i) {
+			ids[i] = Toncc.MIND[rng.nextInt(Toncc.TONCC_CELLS_NUM)];
+			// 3 cells (or -1), often the same one
+			for (int k = 0; k < TonccState.KINGS_NUM; ++k) {
+				final int r = rng.nextInt(8);
+				contests[i] |= (r < 2 ? 0x1F : r < 5 ? 3 : rng.nextInt(Toncc.TONCC_CELLS_NUM)) << (5 * k);
+			}
+		}
+
+		System.out.println(String.format("%-28s %5s %14s %12s %10s",
+					"Benchmark", "Cnt", "Score", "Error", "alloc"));
+
+		bench("move.coordinate", i -> {
+			final int m = moves[i & MASK];
+			final TonccCoordinate c = TonccCoordinate.fromCellIndex(m / Direction.HEX_NUM);
+			c.move(Direction.HEX[m % Direction.HEX_NUM]);
+			return c.asCellIndex();
+		});
+		bench("move.step", i -> {
+			final int m = moves[i & MASK];
+			return TonccCoordinate.step(m / Direction.HEX_NUM, m % Direction.HEX_NUM);
+		});
+		bench("coordinate.asCellIndex", i -> coords[i & MASK].asCellIndex());
+		bench("toncc.getCell", i -> tonccs[i & MASK].getCell(ids[i & MASK]).id().ordinal());
+		bench("toncc.getKingdoms", i -> tonccs[i & MASK].getKingdoms(King.values()[(i & MASK) % 3]).size());
+		bench("toncc.getKingdomsMap", i -> tonccs[i & MASK].getKingdoms().size());
+		bench("rules.contest", i -> {
+			final int c = contests[i & MASK];
+			return TonccRules.contest(cellOrNone(c), cellOrNone(c >> 5), cellOrNone(c >> 10));
+		});
+		bench("state.applyTurn", i -> {
+			final int j = i & MASK;
+			final long s = states[j];
+			return TonccState.isOver(s) ? s : TonccState.applyTurn(layouts[j], s,
+					moves[j] % 6, moves[(j + 1) & MASK] % 6, moves[(j + 2) & MASK] % 6);
+		});
+		bench("state.score", i -> TonccState.score(states[i & MASK], (i & MASK) % 3));
+		bench("zobrist.update", i -> {
+			final int j = i & MASK;
+			return TonccZobrist.update(j, states[j], states[(j + 1) & MASK]);
+		});
+		final TonccTranspositionTable tt = new TonccTranspositionTable(1 << 20);
+		bench("tt.storeProbe", i -> {
+			final long h = states[i & MASK] * 0x9E3779B97F4A7C15L;
+			if ((i & 3) == 0)
+				tt.store(h, i, i & 0xFF, i % Direction.HEX_NUM);
+			return tt.probe(h);
+		});
+		bench("rules.kingdomsScore", i -> TonccRules.kingdomsScore(
+					Toncc.kingdoms(TonccState.ownerMask(states[i & MASK], (i & MASK) % 3)), (i & MASK) % 3));
+		final TonccHeatmap.Model greedyModel = TonccHeatmap.of(TonccPolicy.GREEDY, TonccGame.HEATMAP_SAMPLES);
+		final double[][] heat = new double[TonccState.KINGS_NUM][Toncc.TONCC_CELLS_NUM];
+		bench("heatmap.greedy", i -> {
+			final int j = i & MASK;
+			TonccHeatmap.compute(layouts[j], states[j], greedyModel, heat);
+			return (long)(heat[j % 3][j % Toncc.TONCC_CELLS_NUM] * 1000);
+		});
+		final TonccTournament tournament = new TonccTournament(
+				TonccPolicy.RANDOM, TonccPolicy.RANDOM, TonccPolicy.RANDOM);
+		final TonccTournament.Result result = new TonccTournament.Result();
+		bench("playout.random", i -> {
+			tournament.playGame(rng, result);
+			return result.turns.sum();
+		});
+		bench("playout.engine", i -> {
+			final TonccEngine engine = new TonccEngine(new Toncc(rng));
+			while (!engine.isOver()) {
+				engine.applyTurn(Direction.HEX[rng.nextInt(Direction.HEX_NUM)],
+						Direction.HEX[rng.nextInt(Direction.HEX_NUM)],
+						Direction.HEX[rng.nextInt(Direction.HEX_NUM)]);
+			}
+			return engine.getState();
+		});
+		bench("toncc.new", i -> new Toncc(rng).getLayout()[(i & MASK) % Toncc.TONCC_CELLS_NUM]);
+
+		if (sink == 42)
+			System.out.println();
+	}
+
+	/////// PRIVATE METHODS AND FIELDS ///////
+
+	/** Number of precomputed inputs (a power of 2) */
+	private static final int INPUTS = 1 << 12;
+	private static final int MASK = INPUTS - 1;
+	/** Invocations between two checks of the clock */
+	private static final int BATCH = 1 << 10;
+
+	private static final com.sun.management.ThreadMXBean ALLOCATION =
+		(com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+	private static int warmupIterations = 5;
+	private static int iterations = 5;
+	private static int iterationMillis = 1000;
+	private static String filter = "";
+	/** Consumes the results of the operations, so that the JIT can't drop them */
+	private static volatile long sink;
+
+	private static int cellOrNone(final int c) {
+		return (c & 0x1F) == 0x1F ? -1 : c & 0x1F;
+	}
+
+	private static void bench(final String name, final Op op) {
+		if (!name.contains(filter)) return;
+		final double[] scores = new double[iterations];
+		long allocated = 0, ops = 0;
+		for (int it = -warmupIterations; it < iterations; ++it) {
+			final long threadId = Thread.currentThread().getId();
+			final long alloc0 = ALLOCATION.getThreadAllocatedBytes(threadId);
+			final long start = System.nanoTime();
+			final long end = start + iterationMillis * 1_000_000L;
+			long n = 0, acc = 0, now;
+			do {
+				for (int i = 0; i < BATCH; ++i)
+					acc += op.run((int)n + i);
+				n += BATCH;
+				now = System.nanoTime();
+			} while (now < end);
+			sink += acc;
+			if (it >= 0) {
+				scores[it] = n * 1e3 / (now - start);
+				allocated += ALLOCATION.getThreadAllocatedBytes(threadId) - alloc0;
+				ops += n;
+			}
+		}
+		double mean = 0, var = 0;
+		for (double s : scores)
+			mean += s / iterations;
+		for (double s : scores)
+			var += (s - mean) * (s - mean) / Math.max(1, iterations - 1);
+		System.out.println(String.format("%-28s %5d %10.3f ops/us %5s %.3f %7.1f B/op",
+					name, iterations, mean, "+-", Math.sqrt(var), (double)allocated / ops));
+	}
+}
@@ -32,7 +32,13 @@ class TonccCell {
 	}
 
 	public TonccCell(final Id id) {
+		this(id, null);
+	}
+
+	/** Creates a cell belonging to `toncc`, which is notified when its owner changes */
+	TonccCell(final Id id, final Toncc toncc) {
 		this.id = id;
+		this.toncc = toncc;
 	}
 
 	public final Id id() { return id; }
@@ -44,7 +50,10 @@ class TonccCell {
 	}
 
 	public void setOwner(final King owner) {
+		final King oldOwner = this.owner;
 		this.owner = owner;
+		if (toncc != null && oldOwner != owner)
+			toncc.ownerChanged(id, oldOwner, owner);
 		if (owner == null)
 			state = State.FREE;
 		else
@@ -52,6 +61,7 @@ class TonccCell {
 	}
 
 	protected final Id id;
+	protected final Toncc toncc;
 	protected State state = State.FREE;
 	protected King owner;
 }
@@ -0,0 +1,101 @@
+package toncc;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/** The images of the cells, in all the variants the renderers paint:
+ * normal, captured (grayed out) and tinted with the colour of each king.
+ * Each variant of a cell at a given size is made once, the first time it's
+ * needed, from the image of TonccAssets, as an image compatible with the
+ * screen (which Java2D keeps in video memory), so that painting a cell is
+ * a single blit.
+ *
+ * @license GNU GPL v3
+ * @author Giacomo Parolini
+ */
+final class TonccCellImages {
+
+	static final int NORMAL = 0, CAPTURED = 1;
+
+	private TonccCellImages() {}
+
+	/** @return the variant of the cells owned by `king` */
+	static int tinted(final King king) {
+		return 2 + king.ordinal();
+	}
+
+	/** @return the `variant` of the image of the cell `id`, `size` pixels high (or at its
+	 *  natural size if `size` is not positive), or null if it couldn't be loaded
+	 */
+	static BufferedImage get(final TonccCell.Id id, final int size, final int variant) {
+		final AtomicReferenceArray<BufferedImage> variants;
+		synchronized (CACHE) {
+			variants = CACHE.computeIfAbsent(key(id, size), k -> new AtomicReferenceArray<>(VARIANTS));
+		}
+		BufferedImage img = variants.get(variant);
+		if (img == null) {
+			// (two threads may make the same variant at once: the first copy stored is kept)
+			img = variant == NORMAL ? TonccAssets.get(id.toString(), size) : make(get(id, size, NORMAL), variant);
+			if (!variants.compareAndSet(variant, null, img))
+				img = variants.get(variant);
+		}
+		return img;
+	}
+
+	/** @return the `variant` of the image of the cell `id` at `size` if it's made already, else null */
+	static BufferedImage peek(final TonccCell.Id id, final int size, final int variant) {
+		final AtomicReferenceArray<BufferedImage> variants;
+		synchronized (CACHE) {
+			variants = CACHE.get(key(id, size));
+		}
+		return variants == null ? null : variants.get(variant);
+	}
+
+	/////// PRIVATE METHODS AND FIELDS ///////
+
+	private static final int VARIANTS = 2 + King.values().length;
+	/** Cells at some size kept at most: the ones painted least recently are dropped
+	 *  first, so that the sizes seen while a window is resized don't pile up
+	 */
+	private static final int MAX_ENTRIES = 8 * TonccCell.Id.values().length;
+	/** Brightness of the darkest pixels of a tinted cell, from 0 to 1 */
+	private static final float TINT_FLOOR = 0.6f;
+	/** { id and size => { variant => image } }, in access order (guarded by itself) */
+	private static final Map<Long, AtomicReferenceArray<BufferedImage>> CACHE =
+		new LinkedHashMap<Long, AtomicReferenceArray<BufferedImage>>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Long, AtomicReferenceArray<BufferedImage>> eldest) {
+				return size() > MAX_ENTRIES;
+			}
+		};
+
+	private static long key(final TonccCell.Id id, final int size) {
+		return ((long)Math.max(size, 0) << 8) | id.ordinal();
+	}
+
+	private static BufferedImage make(final BufferedImage normal, final int variant) {
+		if (normal == null)
+			return null;
+		if (variant == CAPTURED)
+			return TonccAssets.compatible(new ImageIcon(GrayFilter.createDisabledImage(normal)).getImage());
+		// Tint: keep the shape and the shading, in the colour of the king
+		final Color color = King.values()[variant - 2].getColor();
+		final int w = normal.getWidth(), h = normal.getHeight();
+		final int[] px = normal.getRGB(0, 0, w, h, null, 0, w);
+		for (int i = 0; i < px.length; ++i) {
+			final int p = px[i];
+			final float lum = (0.299f * ((p >> 16) & 0xFF) + 0.587f * ((p >> 8) & 0xFF) + 0.114f * (p & 0xFF)) / 255;
+			final float f = TINT_FLOOR + (1 - TINT_FLOOR) * lum;
+			px[i] = (p & 0xFF000000)
+				| (Math.round(color.getRed() * f) << 16)
+				| (Math.round(color.getGreen() * f) << 8)
+				| Math.round(color.getBlue() * f);
+		}
+		final BufferedImage tinted = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+		tinted.setRGB(0, 0, w, h, px, 0, w);
+		return TonccAssets.compatible(tinted);
+	}
+}
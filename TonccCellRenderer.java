@@ -1,10 +1,8 @@
 package toncc;
 
 import javax.swing.*;
-import javax.imageio.*;
 import java.awt.*;
 import java.awt.image.*;
-import java.io.IOException;
 
 /** Renders a single TonccCell class.
  * 
@@ -14,28 +12,16 @@ import java.io.IOException;
 class TonccCellRenderer extends JLabel {
 	
 	public TonccCellRenderer(final TonccCell cell) {
-		this.cell = cell;
-		try {
-			icon = new ImageIcon(ImageIO.read(getClass().getClassLoader()
-				.getResourceAsStream("toncc/images/"+cell.id()+".png")));
-			setIcon(icon);
-		} catch(IOException e) {
-			System.err.println("[TonccCellRenderer] Error! Couldn't load icon for cell "+cell.id());
-			e.printStackTrace();
-		}
+		this(cell, -1);
 	}
 
+	/** @param size The height of the cell in pixels (not positive for the natural size) */
 	public TonccCellRenderer(final TonccCell cell, final int size) {
 		this.cell = cell;
-		try {
-			icon = new ImageIcon(ImageIO.read(getClass().getClassLoader()
-				.getResourceAsStream("toncc/images/"+cell.id()+".png"))
-				.getScaledInstance(-1, size, Image.SCALE_SMOOTH));
-			setIcon(icon);
-		} catch(IOException e) {
-			System.err.println("[TonccCellRenderer] Error! Couldn't load icon for cell "+cell.id());
-			e.printStackTrace();
-		}
+		this.size = baseSize = size;
+		final BufferedImage img = TonccCellImages.get(cell.id(), size, TonccCellImages.NORMAL);
+		if (img != null)
+			setIcon(new ImageIcon(img));
 	}
 
 	public void setState(final TonccCell.State state) {
@@ -46,40 +32,77 @@ class TonccCellRenderer extends JLabel {
 	public void setOwner(final King owner) {
 		if(cell.id() == TonccCell.Id.MIND) return;
 		cell.setOwner(owner);
-		if (owner == null)
-			kingColor = null;
-		else
-			kingColor = owner.getColor();
+		this.owner = owner;
 	}
 
 	public final TonccCell getCell() { return cell; }
 
+	/** Changes the height of the cell image (the bounds of the renderer are up to the caller),
+	 * or restores the one given at construction if `newSize` is not positive. Until prepare()
+	 * is called for the new size, the cell is painted by stretching the image of that one.
+	 */
+	public void setCellSize(final int newSize) {
+		final int size = newSize > 0 ? newSize : baseSize;
+		if (size == this.size) return;
+		this.size = size;
+		setIcon(null);
+		repaint();
+	}
+
+	/** Makes the images of the cell at its current size, for all the variants it may be painted in.
+	 * This may take a while: it can be called on any thread.
+	 */
+	public void prepare() {
+		final int size = this.size;
+		final BufferedImage img = TonccCellImages.get(cell.id(), size, TonccCellImages.NORMAL);
+		if (cell.id() != TonccCell.Id.MIND) {
+			TonccCellImages.get(cell.id(), size, TonccCellImages.CAPTURED);
+			for (King king : King.values())
+				TonccCellImages.get(cell.id(), size, TonccCellImages.tinted(king));
+		}
+		if (img != null) {
+			SwingUtilities.invokeLater(() -> {
+				if (this.size == size)
+					setIcon(new ImageIcon(img));
+			});
+		}
+	}
+
 	@Override
-	/** If kingColor != null, paint the cell with a color filter of the
-	 * king's color; else, if cell is captured, paint it grayscale, else
-	 * paint it normally.
+	/** If the cell has an owner, paint it tinted with the owner's
+	 * colour; else, if cell is captured, paint it grayscale, else
+	 * paint it normally. All variants come ready from TonccCellImages;
+	 * while the image for the current size is not (see prepare()), the
+	 * one of the base size is stretched with bilinear filtering.
 	 */
 	protected void paintComponent(Graphics gg) {
-		int width = icon.getIconWidth();
-		int height = icon.getIconHeight();
-		if(kingColor != null) {
-			BufferedImage colVersion = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-			Graphics2D g = (Graphics2D)gg;
-			g.setColor(kingColor);
-
-			g.fillRect(0, 0, width, height);
-		} else {
-			if(cell.getState() == TonccCell.State.FREE)
-				gg.drawImage(icon.getImage(), 0, 0, width, height, 0, 0, width, height, null);
-			else
-				gg.drawImage(GrayFilter.createDisabledImage(
-					icon.getImage()), 0, 0, width, height, 0, 0, width, height, null);
+		final King owner = this.owner;
+		final int variant = owner != null ? TonccCellImages.tinted(owner)
+			: cell.getState() == TonccCell.State.FREE ? TonccCellImages.NORMAL
+			: TonccCellImages.CAPTURED;
+		BufferedImage img = TonccCellImages.peek(cell.id(), size, variant);
+		if (img != null || size == baseSize) {
+			if (img == null)
+				img = TonccCellImages.get(cell.id(), size, variant);
+			if (img != null)
+				gg.drawImage(img, 0, 0, null);
+			return;
 		}
+		img = TonccCellImages.get(cell.id(), baseSize, variant);
+		if (img == null) return;
+		final Graphics2D g = (Graphics2D)gg;
+		final Object hint = g.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.drawImage(img, 0, 0, Math.max(1, img.getWidth() * size / img.getHeight()), size, null);
+		if (hint != null)
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, hint);
 	}
 
 	private final TonccCell cell;
-	private Color kingColor;
-	private ImageIcon icon;
+	/** The height given at construction, and the current one */
+	private final int baseSize;
+	private volatile int size;
+	private volatile King owner;
 
 	/** Test method */
 	public static void main(String[] args) {
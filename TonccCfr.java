@@ -0,0 +1,454 @@
+package toncc;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** Monte Carlo counterfactual regret minimization (external sampling)
+ * over the simultaneous moves of the kings: instead of a single best
+ * move, it computes a mixed strategy over the six directions for each
+ * king, which can't be exploited by an opponent guessing its move.
+ *
+ * As the game has perfect information, an information set is just a
+ * position and the king to move. Each iteration traverses the game from
+ * the root once for each king still playing, trying all of its moves and
+ * sampling the moves of the others from their current strategies, down
+ * to `depth` turns, where the position is evaluated by a playout with a
+ * TonccPolicy. Regrets are accumulated with regret matching+.
+ *
+ * The regrets and the strategy sums live in primitive arrays indexed by
+ * an open-addressing table of Zobrist hashes. All threads update them
+ * at once without locks: slots are claimed by compare-and-set, while
+ * the updates of the floats may occasionally be lost, which only adds
+ * a little noise to the sampling noise.
+ *
+ * @license GNU GPL v3
+ * @author Giacomo Parolini
+ */
+public class TonccCfr {
+
+	/** Playouts lasting longer than this many turns are considered draws */
+	public static final int MAX_PLAYOUT_TURNS = TonccMcts.MAX_PLAYOUT_TURNS;
+
+	/** @param threads Number of threads updating the regrets in parallel
+	 *  @param leafPolicy The policy used by all kings in the playouts
+	 *  @param capacity Maximum number of information sets (rounded up to a power of 2)
+	 *  @param depth Number of turns explored before evaluating the position with a playout
+	 */
+	public TonccCfr(final int threads, final TonccPolicy leafPolicy, final int capacity, final int depth) {
+		if (depth < 1)
+			throw new IllegalArgumentException("Invalid depth: " + depth);
+		this.threads = threads;
+		this.leafPolicy = leafPolicy;
+		this.depth = depth;
+		final int slots = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		mask = slots - 1;
+		keys = new AtomicLongArray(slots);
+		regrets = new float[slots * Direction.HEX_NUM];
+		strategySums = new float[slots * Direction.HEX_NUM];
+		pool = Executors.newFixedThreadPool(threads, r -> {
+			final Thread t = new Thread(r, "TonccCfr");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	public TonccCfr() {
+		this(Runtime.getRuntime().availableProcessors(), TonccPolicy.GREEDY, 1 << 20, 3);
+	}
+
+	/** Runs iterations from the given position on all threads until `millis`
+	 * milliseconds have passed or `maxIterations` iterations have been done per thread.
+	 * The tables are kept between calls, so positions searched before start from
+	 * their previous regrets.
+	 */
+	public void solve(final byte[] layout, final long state, final long millis, final long maxIterations) {
+		final long deadline = System.nanoTime() + millis * 1_000_000L;
+		final long hash = TonccZobrist.hash(layout, state);
+		final List<Future<Long>> done = new ArrayList<>(threads);
+		final long seed = nextSeed();
+		for (int i = 0; i < threads; ++i) {
+			final SplittableRandom rng = new SplittableRandom(seed + i);
+			done.add(pool.submit(() -> {
+				final Traversal tr = new Traversal(layout, rng);
+				long n = 0;
+				for (; n < maxIterations && System.nanoTime() < deadline; ++n) {
+					for (int k = 0; k < TonccState.KINGS_NUM; ++k) {
+						if (!TonccState.isGameOver(state, k))
+							tr.traverse(state, hash, k, 0);
+					}
+				}
+				return n;
+			}));
+		}
+		long iterations = 0;
+		for (Future<Long> f : done) {
+			try {
+				iterations += f.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+		lastIterations = iterations;
+	}
+
+	/** @return the average strategy of `king` in the given position: the
+	 *  probability of each move in Direction.HEX (uniform if it's unknown)
+	 */
+	public double[] getStrategy(final byte[] layout, final long state, final int king) {
+		final double[] strategy = new double[Direction.HEX_NUM];
+		final int slot = find(infoSetKey(TonccZobrist.hash(layout, state), king), false);
+		double sum = 0;
+		if (slot >= 0) {
+			for (int a = 0; a < Direction.HEX_NUM; ++a)
+				sum += strategy[a] = strategySums[slot * Direction.HEX_NUM + a];
+		}
+		for (int a = 0; a < Direction.HEX_NUM; ++a)
+			strategy[a] = sum > 0 ? strategy[a] / sum : 1. / Direction.HEX_NUM;
+		return strategy;
+	}
+
+	/** Solves the current position of `engine` for `millis` milliseconds.
+	 * @return a move for `king` drawn from its average strategy
+	 */
+	public Direction selectMove(final TonccEngine engine, final King king, final long millis) {
+		final byte[] layout = engine.getToncc().getLayout();
+		solve(layout, engine.getState(), millis, Long.MAX_VALUE);
+		return Direction.HEX[sample(getStrategy(layout, engine.getState(), king.ordinal()),
+				new SplittableRandom(nextSeed()))];
+	}
+
+	/** @return a policy running `iterations` iterations on the calling thread, then drawing a
+	 *  move from the average strategy
+	 */
+	public TonccPolicy asPolicy(final long iterations) {
+		return (layout, state, king, rng) -> {
+			final Traversal tr = new Traversal(layout, rng.split());
+			final long hash = TonccZobrist.hash(layout, state);
+			for (long n = 0; n < iterations; ++n) {
+				for (int k = 0; k < TonccState.KINGS_NUM; ++k) {
+					if (!TonccState.isGameOver(state, k))
+						tr.traverse(state, hash, k, 0);
+				}
+			}
+			return sample(getStrategy(layout, state, king), rng);
+		};
+	}
+
+	/** @return a policy running `iterations` iterations per move with a table of its own on each thread
+	 *  (emptied when it's getting full), so it can be used by many games at once
+	 */
+	public static TonccPolicy policy(final long iterations) {
+		final ThreadLocal<TonccPolicy> local = ThreadLocal.withInitial(() -> {
+			final TonccCfr cfr = new TonccCfr(1, TonccPolicy.GREEDY, POLICY_CAPACITY, POLICY_DEPTH);
+			final TonccPolicy solver = cfr.asPolicy(iterations);
+			return (layout, state, king, rng) -> {
+				if (cfr.size() > POLICY_CAPACITY * 3 / 4)
+					cfr.clear();
+				return solver.selectMove(layout, state, king, rng);
+			};
+		});
+		return (layout, state, king, rng) -> local.get().selectMove(layout, state, king, rng);
+	}
+
+	/** @return the total number of iterations done by the last call to solve() */
+	public long getLastIterations() { return lastIterations; }
+
+	/** @return the number of information sets in the tables */
+	public int size() {
+		return used.get();
+	}
+
+	/** Forgets all regrets and strategies. Must not be called while solving. */
+	public void clear() {
+		for (int i = 0; i <= mask; ++i)
+			keys.set(i, 0);
+		used.set(0);
+		Arrays.fill(regrets, 0);
+		Arrays.fill(strategySums, 0);
+	}
+
+	/** Writes the regrets and strategy sums of all information sets to `file`. Must not be called while solving. */
+	public void save(final Path file) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				Files.newOutputStream(file), 1 << 16))) {
+			out.writeLong(MAGIC);
+			out.writeInt(size());
+			for (int i = 0; i <= mask; ++i) {
+				final long key = keys.get(i);
+				if (key == 0) continue;
+				out.writeLong(key);
+				for (int a = 0; a < Direction.HEX_NUM; ++a)
+					out.writeFloat(regrets[i * Direction.HEX_NUM + a]);
+				for (int a = 0; a < Direction.HEX_NUM; ++a)
+					out.writeFloat(strategySums[i * Direction.HEX_NUM + a]);
+			}
+		}
+	}
+
+	/** Adds the information sets saved in `file` to the tables (replacing the ones already there).
+	 *  Must not be called while solving.
+	 */
+	public void load(final Path file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				Files.newInputStream(file), 1 << 16))) {
+			if (in.readLong() != MAGIC)
+				throw new IOException("Not a Toncc CFR file: " + file);
+			final int n = in.readInt();
+			for (int i = 0; i < n; ++i) {
+				final int slot = find(in.readLong(), true);
+				if (slot < 0)
+					throw new IOException("Too many information sets in " + file);
+				for (int a = 0; a < Direction.HEX_NUM; ++a)
+					regrets[slot * Direction.HEX_NUM + a] = in.readFloat();
+				for (int a = 0; a < Direction.HEX_NUM; ++a)
+					strategySums[slot * Direction.HEX_NUM + a] = in.readFloat();
+			}
+		}
+	}
+
+	/** Stops the solving threads */
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+
+	/** Solves the first turn of a layout and prints the strategy of each king */
+	public static void main(String[] args) throws IOException {
+		long millis = 5000;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int capacity = 1 << 22, depth = 3;
+		Toncc toncc = null;
+		Path in = null, out = null;
+
+		for (int i = 0; i < args.length; ++i) {
+			switch (args[i]) {
+			case "-h":
+			case "--help":
+				System.err.println("Usage: TonccCfr [-l layout_id] [-m millis] [-t threads] [-d depth] "
+						+ "[-c capacity] [-i strategy_file] [-o strategy_file]\n"
+						+ "Solves the first turn of the layout (random by default) for `millis` ms, "
+						+ "starting from the tables loaded with -i, and saves them with -o.");
+				return;
+			case "-l":
+				toncc = Toncc.fromId(Toncc.parseId(args[++i]));
+				break;
+			case "-m":
+				millis = Long.parseLong(args[++i]);
+				break;
+			case "-t":
+				threads = Integer.parseInt(args[++i]);
+				break;
+			case "-d":
+				depth = Integer.parseInt(args[++i]);
+				break;
+			case "-c":
+				capacity = Integer.parseInt(args[++i]);
+				break;
+			case "-i":
+				in = Paths.get(args[++i]);
+				break;
+			case "-o":
+				out = Paths.get(args[++i]);
+				break;
+			}
+		}
+		if (toncc == null)
+			toncc = new Toncc();
+
+		final TonccCfr cfr = new TonccCfr(threads, TonccPolicy.GREEDY, capacity, depth);
+		if (in != null)
+			cfr.load(in);
+		final byte[] layout = toncc.getLayout();
+		System.err.println("Solving layout " + Toncc.formatId(toncc.getId()) + " for " + millis
+				+ " ms on " + threads + " threads (depth " + depth + ")");
+		cfr.solve(layout, TonccState.INITIAL, millis, Long.MAX_VALUE);
+		for (King king : King.values()) {
+			final double[] strategy = cfr.getStrategy(layout, TonccState.INITIAL, king.ordinal());
+			final StringBuilder sb = new StringBuilder(String.format("%-6s", king));
+			for (int a = 0; a < Direction.HEX_NUM; ++a)
+				sb.append(String.format("  %s %.3f", Direction.HEX[a], strategy[a]));
+			System.out.println(sb);
+		}
+		System.out.println(cfr.getLastIterations() + " iterations, " + cfr.size() + " information sets");
+		if (out != null)
+			cfr.save(out);
+		cfr.shutdown();
+	}
+
+	/////// PRIVATE METHODS AND FIELDS ///////
+
+	private static final long MAGIC = 0x546F6E6363434631L; // "TonccCF1"
+	/** Size of the tables and depth of the policies made by policy() */
+	private static final int POLICY_CAPACITY = 1 << 16, POLICY_DEPTH = 2;
+	/** Slots looked at before giving up on a full table */
+	private static final int MAX_PROBES = 64;
+
+	/** The state of a thread traversing the game: one set of buffers per depth, so it doesn't allocate */
+	private final class Traversal {
+		Traversal(final byte[] layout, final SplittableRandom rng) {
+			this.layout = layout;
+			this.rng = rng;
+			strategies = new double[depth][TonccState.KINGS_NUM * Direction.HEX_NUM];
+			utilities = new double[depth][Direction.HEX_NUM];
+			slots = new int[depth][TonccState.KINGS_NUM];
+			jointMoves = new int[depth][TonccState.KINGS_NUM];
+		}
+
+		/** @return the expected reward of `traverser` from `state` at depth `d`, updating its regrets */
+		double traverse(final long state, final long hash, final int traverser, final int d) {
+			if (TonccState.isOver(state))
+				return reward(state, traverser);
+			if (d == depth)
+				return playout(state, traverser);
+			final double[] strategy = strategies[d];
+			final int[] slot = slots[d];
+			final int[] moves = jointMoves[d];
+			for (int k = 0; k < TonccState.KINGS_NUM; ++k) {
+				if (TonccState.isGameOver(state, k)) continue;
+				slot[k] = find(infoSetKey(hash, k), true);
+				currentStrategy(slot[k], strategy, k * Direction.HEX_NUM);
+				if (k == traverser) continue;
+				// The others play a single move, and their average strategy is updated where they play
+				moves[k] = sample(strategy, k * Direction.HEX_NUM, rng);
+				if (slot[k] >= 0) {
+					for (int a = 0; a < Direction.HEX_NUM; ++a)
+						strategySums[slot[k] * Direction.HEX_NUM + a] += strategy[k * Direction.HEX_NUM + a];
+				}
+			}
+			if (TonccState.isGameOver(state, traverser)) {
+				final long next = TonccState.applyTurn(layout, state, moves[0], moves[1], moves[2]);
+				return traverse(next, TonccZobrist.update(hash, state, next), traverser, d + 1);
+			}
+			final double[] u = utilities[d];
+			final int base = traverser * Direction.HEX_NUM;
+			double value = 0;
+			for (int a = 0; a < Direction.HEX_NUM; ++a) {
+				moves[traverser] = a;
+				final long next = TonccState.applyTurn(layout, state, moves[0], moves[1], moves[2]);
+				u[a] = traverse(next, TonccZobrist.update(hash, state, next), traverser, d + 1);
+				value += strategy[base + a] * u[a];
+			}
+			final int s = slot[traverser];
+			if (s >= 0) {
+				for (int a = 0; a < Direction.HEX_NUM; ++a) {
+					final int r = s * Direction.HEX_NUM + a;
+					regrets[r] = (float)Math.max(0, regrets[r] + u[a] - value);
+				}
+			}
+			return value;
+		}
+
+		/** @return the reward of `king` for a playout from `state` */
+		private double playout(long state, final int king) {
+			for (int turn = 0; turn < MAX_PLAYOUT_TURNS && !TonccState.isOver(state); ++turn) {
+				final int red = TonccState.isGameOver(state, 0) ? 0
+					: leafPolicy.selectMove(layout, state, 0, rng);
+				final int blue = TonccState.isGameOver(state, 1) ? 0
+					: leafPolicy.selectMove(layout, state, 1, rng);
+				final int yellow = TonccState.isGameOver(state, 2) ? 0
+					: leafPolicy.selectMove(layout, state, 2, rng);
+				state = TonccState.applyTurn(layout, state, red, blue, yellow);
+			}
+			return TonccState.isOver(state) ? reward(state, king) : 1. / TonccState.KINGS_NUM;
+		}
+
+		private final byte[] layout;
+		private final SplittableRandom rng;
+		/** { depth => { king * HEX_NUM + move => probability } } */
+		private final double[][] strategies;
+		/** { depth => { move of the traverser => its expected reward } } */
+		private final double[][] utilities;
+		/** { depth => { king => slot of its information set } } */
+		private final int[][] slots;
+		/** { depth => { king => move } } */
+		private final int[][] jointMoves;
+	}
+
+	/** 1 to the winner, 1/3 to each king in a draw */
+	private static double reward(final long state, final int king) {
+		final King winner = TonccState.winner(state);
+		return winner == null ? 1. / TonccState.KINGS_NUM : winner.ordinal() == king ? 1 : 0;
+	}
+
+	/** Never 0, which marks the empty slots */
+	private static long infoSetKey(final long hash, final int king) {
+		final long key = hash + (king + 1) * 0x9E3779B97F4A7C15L;
+		return key == 0 ? 1 : key;
+	}
+
+	/** @return the slot of `key`, claiming a free one if `insert`, or -1 if it's not there (or the table is full) */
+	private int find(final long key, final boolean insert) {
+		int i = (int)((key ^ (key >>> 32)) * 0x9E3779B9) & mask;
+		for (int p = 0; p < MAX_PROBES; ++p, i = (i + 1) & mask) {
+			final long k = keys.get(i);
+			if (k == key)
+				return i;
+			if (k == 0) {
+				if (!insert)
+					return -1;
+				if (keys.compareAndSet(i, 0, key)) {
+					used.incrementAndGet();
+					return i;
+				}
+				if (keys.get(i) == key)
+					return i;
+			}
+		}
+		return -1;
+	}
+
+	private long nextSeed() {
+		synchronized (seeds) {
+			return seeds.nextLong();
+		}
+	}
+
+	/** Regret matching: writes the current strategy of `slot` to strategy[base .. base + HEX_NUM) */
+	private void currentStrategy(final int slot, final double[] strategy, final int base) {
+		double sum = 0;
+		if (slot >= 0) {
+			for (int a = 0; a < Direction.HEX_NUM; ++a)
+				sum += strategy[base + a] = regrets[slot * Direction.HEX_NUM + a];
+		}
+		for (int a = 0; a < Direction.HEX_NUM; ++a)
+			strategy[base + a] = sum > 0 ? strategy[base + a] / sum : 1. / Direction.HEX_NUM;
+	}
+
+	private static int sample(final double[] strategy, final SplittableRandom rng) {
+		return sample(strategy, 0, rng);
+	}
+
+	/** @return a move drawn from the probabilities in strategy[base .. base + HEX_NUM) */
+	private static int sample(final double[] strategy, final int base, final SplittableRandom rng) {
+		double r = rng.nextDouble();
+		for (int a = 0; a < Direction.HEX_NUM - 1; ++a) {
+			r -= strategy[base + a];
+			if (r < 0) return a;
+		}
+		return Direction.HEX_NUM - 1;
+	}
+
+	private final int threads;
+	private final TonccPolicy leafPolicy;
+	private final int depth;
+	private final int mask;
+	/** { slot => key of the information set (0 = free) } */
+	private final AtomicLongArray keys;
+	/** { slot * HEX_NUM + move => cumulative regret / sum of the strategies played } */
+	private final float[] regrets;
+	private final float[] strategySums;
+	private final ExecutorService pool;
+	/** Seeds the generators of the threads and of selectMove() (guarded by itself, as they may be
+	 *  called from different threads)
+	 */
+	private final SplittableRandom seeds = new SplittableRandom();
+	/** Number of slots taken */
+	private final AtomicInteger used = new AtomicInteger();
+	private volatile long lastIterations;
+}
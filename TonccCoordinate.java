@@ -25,6 +25,29 @@ public class TonccCoordinate {
 		z = y - x;
 	}
 	
+	/** @return the coordinate of the cell with index `idx` (the inverse of asCellIndex()) */
+	public static TonccCoordinate fromCellIndex(final int idx) {
+		int line = 0;
+		while (line < LINE_START.length - 1 && LINE_START[line + 1] <= idx)
+			++line;
+		final int x = line - 2;
+		return new TonccCoordinate(x, idx - 9 - LINE_OFFSET[line]);
+	}
+
+	/** @return the index of the cell reached moving from cell `idx` towards
+	 *  Direction.HEX[dir]: this is a single lookup in a precomputed table.
+	 */
+	public static int step(final int idx, final int dir) {
+		return STEPS[idx * Direction.HEX_NUM + dir];
+	}
+
+	public static int step(final int idx, final Direction d) {
+		final int dir = d.hexIndex();
+		if (dir < 0)
+			throw new IllegalArgumentException("Invalid direction: " + d);
+		return step(idx, dir);
+	}
+
 	void move(Direction d) {
 		int origX = x, origY = y, origZ = y - x;
 		switch(d) {
@@ -77,7 +100,7 @@ public class TonccCoordinate {
 
 	/** @return the current position as the cell index in the Toncc */
 	public int asCellIndex() {
-		return 9 + y + (int)((Math.abs(x) == 1 ? 4 : 3.5) * x);
+		return 9 + y + LINE_OFFSET[x + 2];
 	}
 
 	@Override
@@ -89,5 +112,44 @@ public class TonccCoordinate {
 		return Math.abs(x) + Math.abs(y) + Math.abs(z);
 	}
 
+	/** The index of the first cell of each line of the Toncc */
+	private static final int[] LINE_START = { 0, 3, 7, 12, 16 };
+	/** asCellIndex() - 9 - y for each line of the Toncc */
+	private static final int[] LINE_OFFSET = { -7, -4, 0, 4, 7 };
+	public static final int CELLS_NUM = Toncc.TONCC_CELLS_NUM + 1;
+
+	/** { cell index * HEX_NUM + direction index => destination cell index },
+	 * generated once by moving a coordinate from each cell in each direction.
+	 */
+	private static final byte[] STEPS = new byte[CELLS_NUM * Direction.HEX_NUM];
+	static {
+		for (int idx = 0; idx < CELLS_NUM; ++idx) {
+			for (int dir = 0; dir < Direction.HEX_NUM; ++dir) {
+				final TonccCoordinate coord = fromCellIndex(idx);
+				coord.move(Direction.HEX[dir]);
+				STEPS[idx * Direction.HEX_NUM + dir] = (byte)coord.asCellIndex();
+			}
+		}
+		// Verify the table against the geometry rules, starting from every
+		// valid coordinate rather than from fromCellIndex()
+		int n = 0;
+		for (int x = -2; x <= 2; ++x) {
+			for (int y = -2; y <= 2; ++y) {
+				final TonccCoordinate from = new TonccCoordinate(x, y);
+				if (from.mod() > 4) continue;
+				++n;
+				for (int dir = 0; dir < Direction.HEX_NUM; ++dir) {
+					final TonccCoordinate to = new TonccCoordinate(x, y);
+					to.move(Direction.HEX[dir]);
+					if (to.mod() > 4 || (to.x == 0 && to.y == 0)
+							|| step(from.asCellIndex(), dir) != to.asCellIndex())
+						throw new AssertionError("Bad move table entry from " + from + " towards " + Direction.HEX[dir]);
+				}
+			}
+		}
+		if (n != CELLS_NUM)
+			throw new AssertionError("Expected " + CELLS_NUM + " cells, found " + n);
+	}
+
 	private int x, y, z;
 }
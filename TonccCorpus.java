@@ -0,0 +1,296 @@
+package toncc;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.LongPredicate;
+import java.util.stream.LongStream;
+
+/** An append-only store of the results of many games, kept in columns:
+ * a directory with one file per column, each holding a fixed number of
+ * bytes per game, so that a scan only reads the columns it needs. The
+ * columns are:
+ *
+ *  layout.col   the layout id of the table (8 bytes, see Toncc.getId());
+ *  outcome.col  the ordinal of the winner, DRAW or ABORTED (1 byte);
+ *  score.col    the final score of each king (1 byte per king);
+ *  turns.col    the number of turns played (2 bytes);
+ *  capture.col  the turn when each cell of the MIND was captured,
+ *               counting from 1, or 0 if it never was (1 byte per cell);
+ *  state.col    the final state of the game (8 bytes, see TonccState).
+ *
+ * Games are added by an Appender, which computes all the columns by
+ * replaying a TonccRecord. A corpus is read by mapping the column files
+ * in memory, and scanned in parallel by filtering the stream of its row
+ * indices with the accessors of the columns. As a crash may leave the
+ * columns with different lengths, only the rows present in all columns
+ * are read.
+ *
+ * @license GNU GPL v3
+ * @author Giacomo Parolini
+ */
+public class TonccCorpus {
+
+	/** Outcomes besides the ordinal of the winner */
+	public static final int DRAW = 3, ABORTED = 4;
+
+	/** Adds games to the columns of a corpus */
+	public static class Appender implements Closeable, Flushable {
+		/** Appends to the corpus in `dir`, which is created if needed */
+		public Appender(final Path dir) throws IOException {
+			Files.createDirectories(dir);
+			// Drop the partial rows a crash may have left
+			final long rows = rows(dir);
+			outs = new DataOutputStream[COLUMNS.length];
+			for (int c = 0; c < COLUMNS.length; ++c) {
+				final Path file = dir.resolve(COLUMNS[c]);
+				try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+					ch.truncate(rows * WIDTHS[c]);
+				}
+				outs[c] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+							StandardOpenOption.APPEND), 1 << 16));
+			}
+		}
+
+		/** Replays `record` and appends its results. Many threads may append at once. */
+		public void append(final TonccRecord record) throws IOException {
+			final byte[] layout = Toncc.unrank(record.getLayoutId());
+			final long[] states = new long[record.getTurns() + 1];
+			record.replay(layout, record.getTurns(), states);
+			final long end = states[states.length - 1];
+			final byte[] captures = new byte[Toncc.TONCC_CELLS_NUM];
+			for (int t = 1; t < states.length; ++t) {
+				final long captured = ~TonccState.freeMask(states[t]) & TonccState.freeMask(states[t - 1]);
+				for (long m = captured; m != 0; m &= m - 1)
+					captures[Long.numberOfTrailingZeros(m) >> 1] = (byte)Math.min(t, 0xFF);
+			}
+			final int outcome;
+			if (!TonccState.isOver(end)) {
+				outcome = ABORTED;
+			} else {
+				final King winner = TonccState.winner(end);
+				outcome = winner == null ? DRAW : winner.ordinal();
+			}
+			synchronized (this) {
+				outs[LAYOUT].writeLong(record.getLayoutId());
+				outs[OUTCOME].writeByte(outcome);
+				for (int k = 0; k < TonccState.KINGS_NUM; ++k)
+					outs[SCORE].writeByte(Math.min(TonccState.score(end, k), 0xFF));
+				outs[TURNS].writeShort(Math.min(record.getTurns(), 0xFFFF));
+				outs[CAPTURE].write(captures);
+				outs[STATE].writeLong(end);
+			}
+		}
+
+		@Override
+		public synchronized void flush() throws IOException {
+			for (DataOutputStream out : outs)
+				out.flush();
+		}
+
+		@Override
+		public synchronized void close() throws IOException {
+			for (DataOutputStream out : outs)
+				out.close();
+		}
+
+		private final DataOutputStream[] outs;
+	}
+
+	/** Per-seat results of a set of games */
+	public static class Tally {
+		public final long[] wins = new long[TonccState.KINGS_NUM];
+		public final long[] scores = new long[TonccState.KINGS_NUM];
+		public long draws, aborted, games;
+
+		/** @return the fraction of the finished games won by `king` */
+		public double winRate(final King king) {
+			final long finished = games - aborted;
+			return finished == 0 ? 0 : (double)wins[king.ordinal()] / finished;
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder sb = new StringBuilder();
+			final long finished = games - aborted;
+			for (King king : King.values()) {
+				sb.append(String.format("%-6s wins: %6.2f%%  avg score: %.2f%n", king.getColorString(),
+					100 * winRate(king), finished == 0 ? 0. : (double)scores[king.ordinal()] / finished));
+			}
+			sb.append(String.format("Games: %d  Draws: %.2f%%  Aborted: %d", games,
+				finished == 0 ? 0. : 100. * draws / finished, aborted));
+			return sb.toString();
+		}
+
+		private void add(final Tally other) {
+			for (int k = 0; k < TonccState.KINGS_NUM; ++k) {
+				wins[k] += other.wins[k];
+				scores[k] += other.scores[k];
+			}
+			draws += other.draws;
+			aborted += other.aborted;
+			games += other.games;
+		}
+	}
+
+	/** Maps the columns of the corpus in `dir` */
+	public static TonccCorpus open(final Path dir) throws IOException {
+		return new TonccCorpus(dir, rows(dir));
+	}
+
+	/** @return the number of games in the corpus */
+	public long size() { return rows; }
+
+	/** @return a parallel stream of the indices of all rows, to be filtered with the accessors */
+	public LongStream rows() {
+		return LongStream.range(0, rows).parallel();
+	}
+
+	public long layoutId(final long row) {
+		return buffer(LAYOUT, row).getLong(offset(LAYOUT, row));
+	}
+
+	/** @return the layout of the table of the game in `row` (see Toncc.getLayout()) */
+	public byte[] layout(final long row) {
+		return Toncc.unrank(layoutId(row));
+	}
+
+	/** @return the ordinal of the winner, DRAW or ABORTED */
+	public int outcome(final long row) {
+		return buffer(OUTCOME, row).get(offset(OUTCOME, row));
+	}
+
+	public int score(final long row, final int king) {
+		return buffer(SCORE, row).get(offset(SCORE, row) + king) & 0xFF;
+	}
+
+	public int turns(final long row) {
+		return buffer(TURNS, row).getShort(offset(TURNS, row)) & 0xFFFF;
+	}
+
+	/** @return the turn when the cell with MIND index `cell` was captured (from 1), or 0 if it never was */
+	public int captureTurn(final long row, final int cell) {
+		return buffer(CAPTURE, row).get(offset(CAPTURE, row) + cell) & 0xFF;
+	}
+
+	/** @return the state at the end of the game (see TonccState) */
+	public long finalState(final long row) {
+		return buffer(STATE, row).getLong(offset(STATE, row));
+	}
+
+	/** @return the results of the games in the rows accepted by `filter`, counted in parallel */
+	public Tally tally(final LongPredicate filter) {
+		return rows().filter(filter).collect(Tally::new, (t, row) -> {
+			++t.games;
+			final int outcome = outcome(row);
+			if (outcome == ABORTED) {
+				++t.aborted;
+				return;
+			}
+			if (outcome == DRAW)
+				++t.draws;
+			else
+				++t.wins[outcome];
+			for (int k = 0; k < TonccState.KINGS_NUM; ++k)
+				t.scores[k] += score(row, k);
+		}, Tally::add);
+	}
+
+	/** @return a filter accepting the games where the cell `id` is next to the MIND */
+	public LongPredicate nextToMind(final TonccCell.Id id) {
+		return row -> {
+			final long layoutId = layoutId(row);
+			for (int cell : MIND_NEIGHBOURS) {
+				if (Toncc.idAt(layoutId, cell) == id.ordinal())
+					return true;
+			}
+			return false;
+		};
+	}
+
+	/** Imports game records into a corpus, or prints the results of a corpus */
+	public static void main(String[] args) throws IOException {
+		if (args.length >= 3 && args[0].equals("import")) {
+			final Path dir = Paths.get(args[1]);
+			long n = 0;
+			try (Appender appender = new Appender(dir)) {
+				for (int i = 2; i < args.length; ++i) {
+					try (TonccRecord.Reader in = TonccRecord.Reader.open(Paths.get(args[i]))) {
+						for (TonccRecord r; (r = in.read()) != null; ++n)
+							appender.append(r);
+					}
+				}
+			}
+			System.err.println("Imported " + n + " games into " + dir);
+		} else if (args.length >= 2 && args[0].equals("query")) {
+			final TonccCorpus corpus = open(Paths.get(args[1]));
+			final long start = System.nanoTime();
+			final Tally tally = args.length > 2
+				? corpus.tally(corpus.nextToMind(TonccCell.Id.valueOf(args[2])))
+				: corpus.tally(row -> true);
+			System.out.println(tally);
+			System.err.println(String.format("Scanned %d games in %.2f s", corpus.size(),
+						(System.nanoTime() - start) / 1e9));
+		} else {
+			System.err.println("Usage: TonccCorpus import corpus_dir record_file...\n"
+					+ "       TonccCorpus query corpus_dir [cell_id_next_to_the_MIND]");
+		}
+	}
+
+	/////// PRIVATE METHODS AND FIELDS ///////
+
+	private static final int LAYOUT = 0, OUTCOME = 1, SCORE = 2, TURNS = 3, CAPTURE = 4, STATE = 5;
+	private static final String[] COLUMNS = {
+		"layout.col", "outcome.col", "score.col", "turns.col", "capture.col", "state.col"
+	};
+	/** Bytes per row of each column */
+	private static final int[] WIDTHS = { 8, 1, TonccState.KINGS_NUM, 2, Toncc.TONCC_CELLS_NUM, 8 };
+	/** Rows mapped by each buffer (a single mapping can't exceed 2GB) */
+	private static final int CHUNK_SHIFT = 24;
+	private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+	/** Indices of the cells next to the MIND */
+	private static final int[] MIND_NEIGHBOURS = new int[Direction.HEX_NUM];
+	static {
+		for (int dir = 0; dir < Direction.HEX_NUM; ++dir)
+			MIND_NEIGHBOURS[dir] = TonccCoordinate.step(TonccState.MIND_INDEX, dir);
+	}
+
+	private TonccCorpus(final Path dir, final long rows) throws IOException {
+		this.rows = rows;
+		final int chunks = (int)((rows + CHUNK_MASK) >>> CHUNK_SHIFT);
+		chunkBuffers = new MappedByteBuffer[COLUMNS.length][chunks];
+		for (int c = 0; c < COLUMNS.length; ++c) {
+			try (FileChannel ch = FileChannel.open(dir.resolve(COLUMNS[c]), StandardOpenOption.READ)) {
+				for (int i = 0; i < chunks; ++i) {
+					final long from = (long)i << CHUNK_SHIFT;
+					final long n = Math.min(rows - from, 1L << CHUNK_SHIFT);
+					chunkBuffers[c][i] = ch.map(FileChannel.MapMode.READ_ONLY, from * WIDTHS[c], n * WIDTHS[c]);
+				}
+			}
+		}
+	}
+
+	/** @return the number of complete rows in all the columns in `dir` */
+	private static long rows(final Path dir) throws IOException {
+		long rows = Long.MAX_VALUE;
+		for (int c = 0; c < COLUMNS.length; ++c) {
+			final Path file = dir.resolve(COLUMNS[c]);
+			rows = Math.min(rows, Files.exists(file) ? Files.size(file) / WIDTHS[c] : 0);
+		}
+		return rows;
+	}
+
+	private MappedByteBuffer buffer(final int column, final long row) {
+		return chunkBuffers[column][(int)(row >>> CHUNK_SHIFT)];
+	}
+
+	private static int offset(final int column, final long row) {
+		return (int)(row & CHUNK_MASK) * WIDTHS[column];
+	}
+
+	private final long rows;
+	/** { column => { chunk => mapped rows } } */
+	private final MappedByteBuffer[][] chunkBuffers;
+}
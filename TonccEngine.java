@@ -0,0 +1,168 @@
+package toncc;
+
+import java.util.*;
+
+/** Headless rules engine for a Toncc game: owns the Toncc table, the
+ * kings' positions, their tokens and their scores, and resolves one
+ * full turn at a time. It doesn't depend on Swing, so it can be driven
+ * by the graphical frontend (which is just a Listener of the engine)
+ * as well as by simulations running without a display.
+ *
+ * @license GNU GPL v3
+ * @author Giacomo Parolini
+ */
+public class TonccEngine {
+
+	public static final int INITIAL_TOKENS = 6;
+	/** Index of the MIND among the cells of the Toncc, as given by TonccCoordinate.asCellIndex() */
+	public static final int MIND_INDEX = 9;
+
+	/** Receives the changes of the game state. All methods are called
+	 * synchronously by the thread calling applyTurn().
+	 */
+	public interface Listener {
+		/** `king` has moved onto the cell with index `cellIndex` */
+		default void kingMoved(King king, int cellIndex) {}
+		/** `king` has captured the cell `cellId` */
+		default void cellCaptured(TonccCell.Id cellId, King king) {}
+		/** `king`'s score or tokens have changed */
+		default void scoreChanged(King king, int score, int tokens) {}
+		/** `king` is out of tokens: `score` is its final score */
+		default void kingFinished(King king, int score) {}
+		/** All kings are done: `winner` is null in case of a draw */
+		default void gameOver(King winner) {}
+		/** All the changes of a turn have been notified */
+		default void turnResolved() {}
+	}
+
+	public TonccEngine(final Toncc toncc) {
+		this.toncc = toncc;
+		layout = toncc.getLayout();
+		hash = TonccZobrist.hash(layout, state);
+		record = new TonccRecord.Builder(toncc.getId());
+	}
+
+	public void addListener(final Listener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(final Listener listener) {
+		listeners.remove(listener);
+	}
+
+	/** Moves all kings which are still playing, then resolves captures,
+	 * scores and game over conditions. Directions of kings which are
+	 * already out of the game are ignored (and may be null).
+	 */
+	public void applyTurn(final Direction red, final Direction blue, final Direction yellow) {
+		if (TonccState.isOver(state))
+			throw new IllegalStateException("Game is already over");
+		final Direction[] moves = { red, blue, yellow };
+		for (int k = 0; k < moves.length; ++k) {
+			if (moves[k] == null && !TonccState.isGameOver(state, k))
+				throw new IllegalArgumentException("No move given for " + kings[k]);
+		}
+		record.add(recordedMove(red, 0), recordedMove(blue, 1), recordedMove(yellow, 2));
+		final long prev = state;
+		state = TonccState.applyTurn(layout, prev, moves);
+		hash = TonccZobrist.update(hash, prev, state);
+		++turn;
+
+		// Update the kingdoms and keep the Toncc cells in sync with the captures
+		final long changed = prev ^ state;
+		for (long bits = (changed | changed >>> 1) & TonccState.CELLS_MASK; bits != 0; bits &= bits - 1) {
+			final int cell = Long.numberOfTrailingZeros(bits) >> 1;
+			final int k = TonccState.owner(state, cell) - 1;
+			// (many cells may be captured at once: don't count a kingdom twice)
+			final int completed = Toncc.completedKingdoms(TonccState.ownerMask(state, k), cell) & ~kingdoms[k];
+			kingdoms[k] |= completed;
+			scores[k] += TonccRules.kingdomsScore(completed, k);
+			toncc.getCell(Toncc.MIND[cell]).setOwner(kings[k]);
+		}
+		if (!listeners.isEmpty())
+			fireChanges(prev, state);
+	}
+
+	public final Toncc getToncc() { return toncc; }
+
+	/** @return the packed state of the game (see TonccState) */
+	public long getState() { return state; }
+	/** @return the Zobrist hash of the current position (see TonccZobrist) */
+	public long getHash() { return hash; }
+	/** @return the record of the moves played so far */
+	public TonccRecord getRecord() { return record.build(); }
+	/** @return the number of turns played so far */
+	public int getTurn() { return turn; }
+
+	/** @return the index of the cell where `king` is, as given by TonccCoordinate.asCellIndex() */
+	public int getPosition(final King king) { return TonccState.position(state, king.ordinal()); }
+	public int getTokens(final King king) { return TonccState.tokens(state, king.ordinal()); }
+	public int getScore(final King king) { return score(king.ordinal()); }
+	public boolean isGameOver(final King king) { return TonccState.isGameOver(state, king.ordinal()); }
+
+	/** @return the number of kings which are still playing */
+	public int getActiveKings() { return TonccState.activeKings(state); }
+
+	/** @return true if all kings are out of the game */
+	public boolean isOver() { return TonccState.isOver(state); }
+	/** @return the winner of the game, or null if the game isn't over or it's a draw */
+	public King getWinner() { return isOver() ? TonccState.winner(state) : null; }
+
+	/////// PRIVATE METHODS AND FIELDS ///////
+
+	/** @return the current score of the `k`-th king */
+	private int score(final int k) {
+		return scores[k] + TonccState.bonus(state, k);
+	}
+
+	/** @return the move of the `k`-th king as stored in the record of the game */
+	private int recordedMove(final Direction d, final int k) {
+		return TonccState.isGameOver(state, k) ? TonccRecord.NO_MOVE : d.hexIndex();
+	}
+
+	/** Notifies the listeners of what changed from state `prev` to `next` */
+	private void fireChanges(final long prev, final long next) {
+		for (int k = 0; k < kings.length; ++k) {
+			if (TonccState.isGameOver(prev, k)) continue;
+			for (Listener l : listeners)
+				l.kingMoved(kings[k], TonccState.position(next, k));
+		}
+		for (int cell = 0; cell < Toncc.TONCC_CELLS_NUM; ++cell) {
+			if (TonccState.owner(prev, cell) == TonccState.owner(next, cell)) continue;
+			final King owner = kings[TonccState.owner(next, cell) - 1];
+			for (Listener l : listeners)
+				l.cellCaptured(Toncc.MIND[cell], owner);
+		}
+		for (int k = 0; k < kings.length; ++k) {
+			if (TonccState.isGameOver(prev, k)) continue;
+			final int score = score(k);
+			for (Listener l : listeners)
+				l.scoreChanged(kings[k], score, TonccState.tokens(next, k));
+			if (TonccState.isGameOver(next, k)) {
+				for (Listener l : listeners)
+					l.kingFinished(kings[k], score);
+			}
+		}
+		if (TonccState.isOver(next)) {
+			final King winner = TonccState.winner(next);
+			for (Listener l : listeners)
+				l.gameOver(winner);
+		}
+		for (Listener l : listeners)
+			l.turnResolved();
+	}
+
+	private final Toncc toncc;
+	private final byte[] layout;
+	private final King[] kings = King.values();
+	/** { king ordinal => bitmask of the kingdoms it owns }, updated at each capture */
+	private final int[] kingdoms = new int[kings.length];
+	/** { king ordinal => points from its kingdoms }, updated at each capture */
+	private final int[] scores = new int[kings.length];
+	private final List<Listener> listeners = new ArrayList<>();
+	private final TonccRecord.Builder record;
+	private long state = TonccState.INITIAL;
+	/** Zobrist hash of the layout and `state`, updated at each turn */
+	private long hash;
+	private int turn;
+}
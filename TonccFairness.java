@@ -0,0 +1,262 @@
+package toncc;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/** Measures how fair each layout of the table is to the three seats, by
+ * playing many games on it with the given policies. Only one layout of
+ * each class of equivalent layouts (see TonccSymmetry) is played, which
+ * divides the work by TonccSymmetry.size() (a bit less, as a few layouts
+ * are their own images under some symmetry); the size of the class is
+ * reported, so that the results can be weighted.
+ *
+ * Layouts are scanned in order of rank (see Toncc.rank()), in units of
+ * consecutive ranks, which are played in parallel. The results are
+ * appended to a CSV file as each unit is done, and the units done are
+ * recorded in a checkpoint file together with the length of the CSV
+ * file at that moment: an interrupted job started again with the same
+ * arguments discards the rows written after the last checkpoint and
+ * goes on with the units not done yet. Both files are forced to disk
+ * after each unit, and a line of the checkpoint cut short by a crash
+ * (one without its newline) is ignored.
+ *
+ * @license GNU GPL v3
+ * @author Giacomo Parolini
+ */
+public class TonccFairness {
+
+	public static final String CSV_HEADER =
+		"rank,orbit,games,red_wins,blue_wins,yellow_wins,draws,aborted,layout\n";
+
+	/** @param tournament Plays the games
+	 *  @param first The rank of the first layout to scan
+	 *  @param count The number of layouts to scan (canonical or not)
+	 *  @param unitSize The number of layouts in a unit of work
+	 *  @param games The number of games to play on each canonical layout
+	 *  @param seed The seed of the games: the results only depend on it and on the layout
+	 */
+	public TonccFairness(final TonccTournament tournament, final long first, final long count,
+			final long unitSize, final long games, final long seed) {
+		if (first < 0 || count < 0 || first + count > Toncc.LAYOUTS_NUM || unitSize < 1)
+			throw new IllegalArgumentException("Invalid range of layouts");
+		this.tournament = tournament;
+		this.first = first;
+		this.count = count;
+		this.unitSize = unitSize;
+		this.games = games;
+		this.seed = seed;
+	}
+
+	/** Runs (or resumes) the job with `threads` threads, writing the results to `csvFile`
+	 * and the progress to `checkpointFile`.
+	 */
+	public void run(final Path csvFile, final Path checkpointFile, final int threads)
+			throws IOException, InterruptedException {
+		final String params = first + " " + count + " " + unitSize + " " + games + " " + seed;
+		final long units = (count + unitSize - 1) / unitSize;
+		final Set<Long> done = new HashSet<>();
+		long csvLength = 0;
+		// Length of the complete lines of the checkpoint: a line cut short by a crash is dropped
+		long checkpointLength = 0;
+		if (Files.exists(checkpointFile)) {
+			final byte[] bytes = Files.readAllBytes(checkpointFile);
+			for (int from = 0, to; (to = indexOf(bytes, (byte)'\n', from)) >= 0; from = to + 1) {
+				final String line = new String(bytes, from, to - from, StandardCharsets.UTF_8);
+				if (from == 0) {
+					if (!line.equals(params))
+						throw new IOException("Checkpoint " + checkpointFile
+								+ " belongs to a different job: " + line);
+				} else {
+					final long[] fields = parseCheckpoint(line);
+					if (fields == null || fields[0] < 0 || fields[0] >= units || fields[1] <= csvLength)
+						throw new IOException("Corrupt checkpoint " + checkpointFile + ": " + line);
+					done.add(fields[0]);
+					csvLength = fields[1];
+				}
+				checkpointLength = to + 1;
+			}
+		}
+		if (csvLength > (Files.exists(csvFile) ? Files.size(csvFile) : 0))
+			throw new IOException("Checkpoint " + checkpointFile + " is ahead of " + csvFile);
+
+		System.err.println("[TonccFairness] " + done.size() + "/" + units + " units already done");
+		try (FileChannel csv = FileChannel.open(csvFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		     FileChannel checkpoint = FileChannel.open(checkpointFile, StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE)) {
+			checkpoint.truncate(checkpointLength);
+			checkpoint.position(checkpointLength);
+			if (checkpointLength == 0) {
+				write(checkpoint, params + "\n");
+				checkpoint.force(false);
+			}
+			// Drop the rows of the units which were not checkpointed
+			csv.truncate(csvLength);
+			csv.position(csvLength);
+			if (csvLength == 0)
+				write(csv, CSV_HEADER);
+			final AtomicLong next = new AtomicLong();
+			final ExecutorService pool = Executors.newFixedThreadPool(threads);
+			final List<Future<?>> workers = new ArrayList<>();
+			for (int i = 0; i < threads; ++i) {
+				workers.add(pool.submit(() -> {
+					for (long u = next.getAndIncrement(); u < units; u = next.getAndIncrement()) {
+						if (done.contains(u)) continue;
+						final String rows = playUnit(u);
+						synchronized (csv) {
+							write(csv, rows);
+							csv.force(false);
+							write(checkpoint, u + " " + csv.position() + "\n");
+							checkpoint.force(false);
+						}
+					}
+					return null;
+				}));
+			}
+			pool.shutdown();
+			try {
+				for (Future<?> f : workers)
+					f.get();
+			} catch (ExecutionException e) {
+				pool.shutdownNow();
+				final Throwable cause = e.getCause();
+				if (cause instanceof IOException)
+					throw (IOException)cause;
+				throw new RuntimeException(cause);
+			}
+		}
+	}
+
+	/** @return the CSV rows of the canonical layouts of the `u`-th unit */
+	String playUnit(final long u) {
+		final long from = first + u * unitSize, to = Math.min(first + count, from + unitSize);
+		final byte[] layout = Toncc.unrank(from);
+		final byte[] scratch = new byte[layout.length];
+		final int[] perm = new int[Toncc.TONCC_CELLS_NUM];
+		for (int i = 0, n = 0; i < layout.length; ++i)
+			if (i != TonccEngine.MIND_INDEX) perm[n++] = layout[i];
+		final StringBuilder sb = new StringBuilder();
+		int canonical = 0;
+		for (long rank = from; rank < to; ++rank) {
+			for (int i = 0, n = 0; i < layout.length; ++i)
+				if (i != TonccEngine.MIND_INDEX) layout[i] = (byte)perm[n++];
+			if (TonccSymmetry.isCanonical(layout, scratch)) {
+				final TonccTournament.Result result = new TonccTournament.Result();
+				final SplittableRandom rng = new SplittableRandom(seed + rank);
+				for (long g = 0; g < games; ++g)
+					tournament.playGame(layout, rng, result);
+				sb.append(rank).append(',').append(TonccSymmetry.orbitSize(layout)).append(',')
+					.append(games);
+				for (LongAdder w : result.wins)
+					sb.append(',').append(w.sum());
+				sb.append(',').append(result.draws.sum()).append(',').append(result.aborted.sum()).append(',');
+				for (int i = 0; i < layout.length; ++i) {
+					if (i == TonccEngine.MIND_INDEX) continue;
+					if (i > 0) sb.append(' ');
+					sb.append(TonccCell.Id.values()[layout[i]]);
+				}
+				sb.append('\n');
+				++canonical;
+			}
+			TonccSymmetry.nextPermutation(perm);
+		}
+		System.err.println("[TonccFairness] Unit " + u + ": " + canonical + " canonical layouts");
+		return sb.toString();
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		long first = 0, count = 1_000_000, unitSize = 10_000, games = 1000;
+		long seed = 0;
+		int threads = Runtime.getRuntime().availableProcessors();
+		final TonccPolicy[] policies = { TonccPolicy.GREEDY, TonccPolicy.GREEDY, TonccPolicy.GREEDY };
+		Path csv = Paths.get("fairness.csv"), checkpoint = null;
+
+		for (int i = 0; i < args.length; ++i) {
+			switch (args[i]) {
+			case "-h":
+			case "--help":
+				System.err.println("Usage: TonccFairness [-f first_rank] [-l layouts] [-u unit_size] "
+						+ "[-n games_per_layout] [-s seed] [-t threads] "
+						+ "[-p red_policy,blue_policy,yellow_policy] [-o csv_file] [-c checkpoint_file]\n"
+						+ "Policies: " + String.join(", ", TonccTournament.POLICIES.keySet()));
+				return;
+			case "-f":
+				first = Long.parseLong(args[++i]);
+				break;
+			case "-l":
+				count = Long.parseLong(args[++i]);
+				break;
+			case "-u":
+				unitSize = Long.parseLong(args[++i]);
+				break;
+			case "-n":
+				games = Long.parseLong(args[++i]);
+				break;
+			case "-s":
+				seed = Long.parseLong(args[++i]);
+				break;
+			case "-t":
+				threads = Integer.parseInt(args[++i]);
+				break;
+			case "-p":
+				{
+					final String[] names = args[++i].split(",");
+					for (int k = 0; k < policies.length && k < names.length; ++k) {
+						policies[k] = TonccTournament.POLICIES.get(names[k]);
+						if (policies[k] == null) {
+							System.err.println("Unknown policy: " + names[k]);
+							return;
+						}
+					}
+					break;
+				}
+			case "-o":
+				csv = Paths.get(args[++i]);
+				break;
+			case "-c":
+				checkpoint = Paths.get(args[++i]);
+				break;
+			}
+		}
+		if (checkpoint == null)
+			checkpoint = Paths.get(csv + ".checkpoint");
+
+		final long start = System.nanoTime();
+		new TonccFairness(new TonccTournament(policies), first, count, unitSize, games, seed)
+			.run(csv, checkpoint, threads);
+		System.err.println(String.format("[TonccFairness] Done in %.2f s", (System.nanoTime() - start) / 1e9));
+	}
+
+	/////// PRIVATE METHODS AND FIELDS ///////
+
+	/** @return the unit and the CSV length of a line of the checkpoint, or null if it's malformed */
+	private static long[] parseCheckpoint(final String line) {
+		final String[] fields = line.split(" ");
+		if (fields.length != 2) return null;
+		try {
+			return new long[] { Long.parseLong(fields[0]), Long.parseLong(fields[1]) };
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static int indexOf(final byte[] bytes, final byte b, final int from) {
+		for (int i = from; i < bytes.length; ++i)
+			if (bytes[i] == b) return i;
+		return -1;
+	}
+
+	private static void write(final FileChannel ch, final String s) throws IOException {
+		final ByteBuffer buf = ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+		while (buf.hasRemaining())
+			ch.write(buf);
+	}
+
+	private final TonccTournament tournament;
+	private final long first, count, unitSize, games, seed;
+}
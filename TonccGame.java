@@ -2,10 +2,10 @@ package toncc;
 
 import javax.swing.*;
 import javax.swing.event.*;
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.event.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.io.IOException;
 import static java.awt.event.KeyEvent.*;
 
@@ -19,7 +19,9 @@ import static java.awt.event.KeyEvent.*;
 public class TonccGame extends TonccRenderer {
 
 	static final int KING_SIZE = 45;
-	static final int INITIAL_TOKENS = 6;
+	static final int INITIAL_TOKENS = TonccEngine.INITIAL_TOKENS;
+	/** The moves sampled to estimate the probabilities of a policy in the heatmap */
+	static final int HEATMAP_SAMPLES = 64;
 
 	/** { direction: [red, blue, yellow] } */
 	private final static Map<Direction, Integer[]> commands = new EnumMap<>(Direction.class);
@@ -54,8 +56,19 @@ public class TonccGame extends TonccRenderer {
 		kings[1] = King.BLUE;
 		kings[2] = King.YELLOW;
 
+		engine = new TonccEngine(toncc);
+		engine.addListener(engineListener);
 		playerManager = new PlayerManager(this);
 
+		// Everybody plays at the keyboard, until other players take their seats
+		match = new TonccMatch(engine, SwingUtilities::invokeLater);
+		for (King king : kings) {
+			keyboard[king.ordinal()] = new KeyboardPlayer();
+			match.setPlayer(king, keyboard[king.ordinal()]);
+		}
+		match.addListener(matchListener);
+		match.start();
+
 		// get the MIND position
 		Rectangle mindBounds = cells.get(9).getBounds();
 		for (int i = 0; i < 3; ++i) {
@@ -66,7 +79,6 @@ public class TonccGame extends TonccRenderer {
 					KING_SIZE, 
 					KING_SIZE);
 			SwingUtilities.invokeLater(() -> sprite.repaint());
-			activeKings.add(kings[i]);
 		}
 
 		add(kings[0].getSprite(), new Integer(2));
@@ -74,56 +86,17 @@ public class TonccGame extends TonccRenderer {
 		add(kings[2].getSprite(), new Integer(3));
 
 		// Position hints
-		// TRIGGER WARNING: the following code is horribly hacky, don't judge.
-
-		/// Top left movement
-		Rectangle bounds = cells.get(0).getBounds();
-		JLabel lab = new JLabel(showCommand(Direction.TOP_LEFT));
-		lab.setBounds((int)(bounds.getX() - cellSize),
-				(int)(bounds.getY() - 1.2 * cellSize), 
-				2 * cellSize, 2 * cellSize);
-		lab.setFont(new Font("Sans", Font.BOLD, 18));
-		add(lab, new Integer(2));
-		// Top right
-		bounds = cells.get(2).getBounds();
-		lab = new JLabel(showCommand(Direction.TOP_RIGHT));
-		lab.setBounds((int)(bounds.getX() + 1.2 * cellSize),
-				(int)(bounds.getY() - 1.2 * cellSize), 
-				2 * cellSize, 2 * cellSize);
-		lab.setFont(new Font("Sans", Font.BOLD, 18));
-		add(lab, new Integer(2));
-		// Left
-		bounds = cells.get(7).getBounds();
-		lab = new JLabel(showCommand(Direction.LEFT, ",<br>"));
-		lab.setBounds((int)(bounds.getX() - 0.5 * cellSize),
-				(int)(bounds.getY() - 0.5 * cellSize), 
-				2 * cellSize, 2 * cellSize);
-		lab.setFont(new Font("Sans", Font.BOLD, 18));
-		add(lab, new Integer(2));
-		// Right
-		bounds = cells.get(11).getBounds();
-		lab = new JLabel(showCommand(Direction.RIGHT, ",<br>"));
-		lab.setBounds((int)(bounds.getX() + 1.2 * cellSize),
-				(int)(bounds.getY() - 0.5 * cellSize), 
-				2 * cellSize, 2 * cellSize);
-		lab.setFont(new Font("Sans", Font.BOLD, 18));
-		add(lab, new Integer(2));
-		// Bottom left
-		bounds = cells.get(16).getBounds();
-		lab = new JLabel(showCommand(Direction.BOTTOM_LEFT));
-		lab.setBounds((int)(bounds.getX() - cellSize),
-				(int)(bounds.getY()), 
-				2 * cellSize, 2 * cellSize);
-		lab.setFont(new Font("Sans", Font.BOLD, 18));
-		add(lab, new Integer(2));
-		// Bottom right
-		bounds = cells.get(18).getBounds();
-		lab = new JLabel(showCommand(Direction.BOTTOM_RIGHT));
-		lab.setBounds((int)(bounds.getX() + 1.2 * cellSize),
-				(int)(bounds.getY()), 
-				2 * cellSize, 2 * cellSize);
-		lab.setFont(new Font("Sans", Font.BOLD, 18));
-		add(lab, new Integer(2));
+		hints.put(Direction.TOP_LEFT, new JLabel(showCommand(Direction.TOP_LEFT)));
+		hints.put(Direction.TOP_RIGHT, new JLabel(showCommand(Direction.TOP_RIGHT)));
+		hints.put(Direction.LEFT, new JLabel(showCommand(Direction.LEFT, ",<br>")));
+		hints.put(Direction.RIGHT, new JLabel(showCommand(Direction.RIGHT, ",<br>")));
+		hints.put(Direction.BOTTOM_LEFT, new JLabel(showCommand(Direction.BOTTOM_LEFT)));
+		hints.put(Direction.BOTTOM_RIGHT, new JLabel(showCommand(Direction.BOTTOM_RIGHT)));
+		for (JLabel lab : hints.values()) {
+			lab.setFont(new Font("Sans", Font.BOLD, 18));
+			add(lab, new Integer(2));
+		}
+		placeHints();
 	}
 
 	public static void main(String[] args) {
@@ -133,13 +106,27 @@ public class TonccGame extends TonccRenderer {
 
 		int cs = 70,  // cell size
 		    kcs = -1; // kingdoms (mind) cell size
+		final Set<King> bots = EnumSet.noneOf(King.class);
+		final Map<King, Integer> remotes = new EnumMap<>(King.class);
+		long botMillis = 1000;
+		int botThreads = Runtime.getRuntime().availableProcessors();
+		String tablebase = null;
+		Toncc toncc = null;
+		String recordFile = null;
+		TonccHeatmap.Model heatmap = null;
+		TonccPolicy analysisPolicy = null;
 
 		for(int i = 0; i < args.length; ++i) {
 			final String arg = args[i];
 			switch(arg) {
 			case "-h":
 			case "--help":
-				System.err.println("Usage: TonccGame [-t toncc_cell_size] [-k mind_cell_size]");
+				System.err.println("Usage: TonccGame [-t toncc_cell_size] [-k mind_cell_size] "
+						+ "[-b bot_seats (e.g. red,yellow)] [-m bot_millis_per_move] [-j bot_threads] "
+						+ "[-e endgame_tablebase] [-l layout_id] "
+						+ "[-r record_file] [-n remote_seat:port (e.g. blue:7470)]... "
+						+ "[-H heatmap_model (uniform, " + String.join(", ", TonccTournament.POLICIES.keySet()) + ")] "
+						+ "[-a analysis_playout_policy (" + String.join(", ", TonccTournament.POLICIES.keySet()) + ")]");
 				return;
 			case "-t":
 				++i;
@@ -149,8 +136,61 @@ public class TonccGame extends TonccRenderer {
 				++i;
 				kcs = new Integer(args[i]);
 				break;
+			case "-b":
+				++i;
+				for (String seat : args[i].split(","))
+					bots.add(King.valueOf(seat.toUpperCase()));
+				break;
+			case "-m":
+				++i;
+				botMillis = Long.parseLong(args[i]);
+				break;
+			case "-j":
+				++i;
+				botThreads = Integer.parseInt(args[i]);
+				break;
+			case "-e":
+				++i;
+				tablebase = args[i];
+				break;
+			case "-l":
+				++i;
+				toncc = Toncc.fromId(Toncc.parseId(args[i]));
+				break;
+			case "-r":
+				++i;
+				recordFile = args[i];
+				break;
+			case "-H":
+				++i;
+				if (args[i].equals("uniform")) {
+					heatmap = TonccHeatmap.UNIFORM;
+				} else if (TonccTournament.POLICIES.containsKey(args[i])) {
+					heatmap = TonccHeatmap.of(TonccTournament.POLICIES.get(args[i]), HEATMAP_SAMPLES);
+				} else {
+					System.err.println("Unknown heatmap model: " + args[i]);
+					return;
+				}
+				break;
+			case "-a":
+				++i;
+				analysisPolicy = TonccTournament.POLICIES.get(args[i]);
+				if (analysisPolicy == null) {
+					System.err.println("Unknown policy: " + args[i]);
+					return;
+				}
+				break;
+			case "-n":
+				{
+					++i;
+					final String[] seat = args[i].split(":");
+					remotes.put(King.valueOf(seat[0].toUpperCase()), seat.length > 1
+							? Integer.parseInt(seat[1]) : NetworkPlayer.DEFAULT_PORT);
+					break;
+				}
 			}
 		}
+		TonccAssets.preload();
 		JFrame frame = new JFrame();
 
 		JLabel lab = new JLabel("<html>Virtual T&oacute;ncc by Giacomo Parolini - v1.1 (2015) " +
@@ -160,18 +200,25 @@ public class TonccGame extends TonccRenderer {
 
 		BackgroundPanel container = new BackgroundPanel();
 
-		try {
-			container.setImage(ImageIO.read(
-					TonccGame.class.getClassLoader()
-					.getResourceAsStream("toncc/images/bg.png")));
-		} catch(Exception e) {
-			System.err.println("[ ERROR ] Couldn't set background image:");
-			e.printStackTrace();
+		final Image bg = TonccAssets.get("bg");
+		if (bg != null) {
+			container.setImage(bg);
+		} else {
+			System.err.println("[ ERROR ] Couldn't set background image");
 			container.setBackground(new Color(0x607270));
 		}
 		container.setLayout(new GridBagLayout());
 		TonccGame renderer = null;
-		renderer = new TonccGame(new Toncc(), cs, kcs);
+		if (toncc == null)
+			toncc = new Toncc();
+		System.err.println("Layout id: " + Toncc.formatId(toncc.getId()));
+		renderer = new TonccGame(toncc, cs, kcs);
+		if (recordFile != null)
+			renderer.recordFile = java.nio.file.Paths.get(recordFile);
+		if (heatmap != null)
+			renderer.setHeatmapModel(heatmap);
+		if (analysisPolicy != null)
+			renderer.setAnalysis(new TonccAnalysis(Runtime.getRuntime().availableProcessors(), analysisPolicy));
 
 		GridBagConstraints c = new GridBagConstraints();
 		c.insets = new Insets(15, 0, 15, 0);
@@ -179,7 +226,7 @@ public class TonccGame extends TonccRenderer {
 		c.gridheight = 2;
 		c.gridx = 0;
 		c.gridy = 0;
-		c.fill = GridBagConstraints.HORIZONTAL;
+		c.fill = GridBagConstraints.BOTH;
 		c.anchor = GridBagConstraints.CENTER;
 		c.weighty = 1;
 		c.weightx = 0.7;
@@ -194,166 +241,202 @@ public class TonccGame extends TonccRenderer {
 		c.gridy = 1;
 		c.gridheight = 1;
 		container.add(renderer.playerManager, c);
+		if (renderer.analysisPanel != null) {
+			c.gridy = 2;
+			container.add(renderer.analysisPanel, c);
+		}
 	
 		frame.add(container);
 		frame.addKeyListener(renderer.playerMovesListener);
-
-		SwingConsole.run(frame, 832, 624, "Play Toncc!");
-	}
-
-	void checkCaptures() {
-		// Keep track of { cell id => occupier king's index }
-		Map<TonccCell.Id, Integer> occupiedBy = new EnumMap<>(TonccCell.Id.class);
-		for (int i = 0; i < 3; ++i) {
-			final int idx = kings[i].position.asCellIndex();
-			if (idx == 9) {
-				// ignore the MIND
-				continue;
+		final TonccGame game = renderer;
+		frame.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosing(WindowEvent e) {
+				game.dispose();
 			}
-			// Check if idx-th cell is occupied
-			TonccCellRenderer cell = cells.get(idx);
-			if (cell.getCell().getState() == TonccCell.State.CAPTURED)
-				continue;
-
-			final TonccCell.Id cellId =  cell.getCell().id();
-			final Integer otheridx = occupiedBy.get(cellId);
-			if (otheridx == null) {
-				occupiedBy.put(cellId, i);
-			} else {
-				// Another king is on the cell: check who prevails
-				if (kings[i].prevailsOn(kings[otheridx], cellId))
-					occupiedBy.put(cellId, i);
+		});
+		if (!bots.isEmpty()) {
+			final TonccMcts mcts = new TonccMcts(botThreads, TonccPolicy.GREEDY);
+			if (tablebase != null) {
+				try {
+					mcts.setTablebase(TonccTablebase.open(java.nio.file.Paths.get(tablebase)));
+				} catch (IOException e) {
+					System.err.println("[ ERROR ] Couldn't load the endgame tablebase:");
+					e.printStackTrace();
+				}
 			}
+			renderer.setBots(bots, mcts, botMillis);
 		}
-		// Capture the cells
-		for (Map.Entry<TonccCell.Id, Integer> entry : occupiedBy.entrySet()) {
-			final TonccCell.Id cellId = entry.getKey();
-			final int kidx = entry.getValue();
-			final King king = kings[kidx];
-			toncc.getCell(cellId).setOwner(king);
-			kgCellRenderers.get(cellId).setOwner(king);
-			king.decTokens();
+		for (Map.Entry<King, Integer> remote : remotes.entrySet()) {
+			System.err.println("Waiting for " + remote.getKey() + " on port " + remote.getValue() + "...");
+			try {
+				renderer.setPlayer(remote.getKey(), NetworkPlayer.accept(remote.getValue()));
+			} catch (IOException e) {
+				System.err.println("[ ERROR ] Couldn't connect the remote player:");
+				e.printStackTrace();
+			}
 		}
-		playerManager.updateScore();
+
+		SwingConsole.run(frame, 832, 624, "Play Toncc!");
 	}
 
-	/** When only 1 king is left, this procedure assigns it all the remaining cells. */
-	private void autoFinish() {
-		// Find out which king is left
-		King king = null;
-		for (King k : kings)
-			if (!k.gameOver) {
-				king = k;
-				break;
-			}
-		for (TonccCellRenderer cell : cells) {
-			TonccCell.Id cellId = cell.getCell().id();
-			if (cellId == TonccCell.Id.MIND) continue;
-			if (cell.getCell().getState() == TonccCell.State.FREE) {
-				kgCellRenderers.get(cellId).setOwner(king);
-				toncc.getCell(cellId).setOwner(king);
-				cell.setState(TonccCell.State.CAPTURED);
-			}
-		}
-		king.setTokens(0);
-		checkKingsGameOver();
+	/** Seats computer players on `seats`, which search each move for `millis`
+	 * milliseconds with `mcts`, off the EDT. The other seats go back to the keyboard.
+	 */
+	public void setBots(final Set<King> seats, final TonccMcts mcts, final long millis) {
+		this.mcts = mcts;
+		final Player bot = new BotPlayer(mcts, millis, botExecutor);
+		for (King king : kings)
+			match.setPlayer(king, seats.contains(king) ? bot : keyboard[king.ordinal()]);
 	}
 
-	/** Checks if any king is out of tokens; if all kings are done,
-	 * announce game over.
+	/** Seats `player` on `king`: it's asked for the moves of that king from the current turn on */
+	public void setPlayer(final King king, final Player player) {
+		match.setPlayer(king, player);
+	}
+
+	/** Shades the cells by the probability that each king captures them next turn,
+	 * assuming the kings move as told by `model` (null to hide the shading)
 	 */
-	public void checkKingsGameOver() {
-		for (int i = 0; i < kings.length; ++i) {
-			King king = kings[i];
-			if (king.gameOver) continue;
-			final int kidx = i;
-			if (king.getTokens() == 0) {
-				int score = 0;
-				for (King k : kings) {
-					if (!k.gameOver)
-						++score;
-				}
-				// Finalize this king's score
-				playerManager.finalizeScore(king, score);
-				activeKings.remove(king);
-				// Place the king back on the MIND
-				Rectangle bounds = cells.get(9).getBounds();
-				SwingUtilities.invokeLater(() -> {
-					king.position = new TonccCoordinate(0, 0);
-					king.getSprite().setBounds(
-							bounds.x + kingXOffset[kidx],
-							bounds.y + kingYOffset[kidx],
-							KING_SIZE, KING_SIZE);
-					king.repaint();
-				});
-			}
-		}
+	public void setHeatmapModel(final TonccHeatmap.Model model) {
+		SwingUtilities.invokeLater(() -> {
+			heatmapModel = model;
+			if (model == null)
+				setHeatmap(null);
+			else
+				updateHeatmap();
+		});
+	}
 
-		// This must be done after the first check to properly count
-		// the king points
-		int gameOverCnt = 0;
-		for (King king : kings) {
-			if (king.getTokens() == 0) {
-				king.gameOver = true;
-				++gameOverCnt;
-			}
-		}
+	/** Plays out each position with `analysis` as soon as it's reached, showing the
+	 * estimates on the panel returned by getAnalysisPanel(). Must be called once, before
+	 * the panel is laid out.
+	 */
+	public void setAnalysis(final TonccAnalysis analysis) {
+		this.analysis = analysis;
+		analysisPanel = new AnalysisPanel(analysis);
+		SwingUtilities.invokeLater(() -> analysis.start(engine.getToncc().getLayout(), engine.getState()));
+	}
 
-		if (gameOverCnt == kings.length) {
-			// pair with highest score so far
-			Map.Entry<King, Integer> winner = null;
-			// map { king => score }
-			Map<King, Integer> scores = new HashMap<>();
-			for (King king : kings) {
-				int score = king.score;
-				if (winner == null || winner.getValue() < score) {
-					winner = new AbstractMap.SimpleEntry<>(king, score);
-				}
-				scores.put(king, score);
-			}
-			// If 2 kings have the same score, the dominated one wins.
-			// A full draw only happens if all 3 kings have the same score.
-			int i = 0;
-			boolean draw = false;
-			King[] winners = new King[2];
-			for (Map.Entry<King, Integer> entry : scores.entrySet()) {
-				King king = entry.getKey();
-				int score = entry.getValue();
-				if (score == winner.getValue()) {
-					if (i == 2) {
-						draw = true;
-						break;
-					} 
-					winners[i++] = king;
-				}
+	public JPanel getAnalysisPanel() { return analysisPanel; }
+
+	/** Stops the game and its players for good (e.g. when the window is closed) */
+	public void dispose() {
+		match.close();
+		SwingUtilities.invokeLater(() -> {
+			botExecutor.shutdownNow();
+			analysisExecutor.shutdownNow();
+			if (analysis != null) {
+				analysis.shutdown();
+				analysisPanel.stop();
 			}
+			if (mcts != null)
+				mcts.shutdown();
+		});
+	}
+
+	/** Computes the heatmap of the current position off the EDT, and shows it unless
+	 * the position has changed by then. Must be called on the EDT.
+	 */
+	private void updateHeatmap() {
+		final TonccHeatmap.Model model = heatmapModel;
+		if (model == null) return;
+		final byte[] layout = engine.getToncc().getLayout();
+		final long state = engine.getState();
+		analysisExecutor.execute(() -> {
+			final double[][] heat = TonccHeatmap.compute(layout, state, model);
 			SwingUtilities.invokeLater(() -> {
-				kingdoms.repaint();
-				playerManager.repaint();
-				repaint();
+				if (heatmapModel == model && engine.getState() == state)
+					setHeatmap(heat);
 			});
-			if (draw) {
+		});
+	}
+
+	/** Moves `king`'s sprite onto the cell with index `idx` at the next update of the screen
+	 * (moving it repaints just where it was and where it goes)
+	 */
+	private void placeKing(final King king, final int idx) {
+		final int kidx = king.ordinal();
+		updater.post(king, () -> {
+			final Rectangle bounds = cells.get(idx).getBounds();
+			final int size = kingSize();
+			king.setBounds(
+					bounds.x + kingXOffset[kidx] * size / KING_SIZE,
+					bounds.y + kingYOffset[kidx] * size / KING_SIZE,
+					size, size);
+		});
+	}
+
+	/** @return the size of the kings' sprites for the current size of the cells */
+	private int kingSize() {
+		return KING_SIZE * cellSize / baseCellSize;
+	}
+
+	/** Places the hints of the commands around the cells at the border of the table */
+	private void placeHints() {
+		// TRIGGER WARNING: the following code is horribly hacky, don't judge.
+
+		/// Top left movement
+		Rectangle bounds = cells.get(0).getBounds();
+		hints.get(Direction.TOP_LEFT).setBounds((int)(bounds.getX() - cellSize),
+				(int)(bounds.getY() - 1.2 * cellSize), 
+				2 * cellSize, 2 * cellSize);
+		// Top right
+		bounds = cells.get(2).getBounds();
+		hints.get(Direction.TOP_RIGHT).setBounds((int)(bounds.getX() + 1.2 * cellSize),
+				(int)(bounds.getY() - 1.2 * cellSize), 
+				2 * cellSize, 2 * cellSize);
+		// Left
+		bounds = cells.get(7).getBounds();
+		hints.get(Direction.LEFT).setBounds((int)(bounds.getX() - 0.5 * cellSize),
+				(int)(bounds.getY() - 0.5 * cellSize), 
+				2 * cellSize, 2 * cellSize);
+		// Right
+		bounds = cells.get(11).getBounds();
+		hints.get(Direction.RIGHT).setBounds((int)(bounds.getX() + 1.2 * cellSize),
+				(int)(bounds.getY() - 0.5 * cellSize), 
+				2 * cellSize, 2 * cellSize);
+		// Bottom left
+		bounds = cells.get(16).getBounds();
+		hints.get(Direction.BOTTOM_LEFT).setBounds((int)(bounds.getX() - cellSize),
+				(int)(bounds.getY()), 
+				2 * cellSize, 2 * cellSize);
+		// Bottom right
+		bounds = cells.get(18).getBounds();
+		hints.get(Direction.BOTTOM_RIGHT).setBounds((int)(bounds.getX() + 1.2 * cellSize),
+				(int)(bounds.getY()), 
+				2 * cellSize, 2 * cellSize);
+	}
+
+	@Override
+	protected void boardResized() {
+		placeHints();
+		for (King king : kings)
+			placeKing(king, engine.getPosition(king));
+	}
+
+	@Override
+	protected void boardRescaled() {
+		for (King king : kings)
+			king.setSpriteSize(kingSize());
+	}
+
+	/** Announces the end of the game. */
+	private void showGameOver(final King winner) {
+		// Don't block the turn being resolved with the modal dialog
+		// (this runs after the last update of the screen, posted earlier)
+		SwingUtilities.invokeLater(() -> {
+			if (winner == null) {
 				JOptionPane.showMessageDialog(this, 
 						"Game Over! It's a draw.",
 						"Game Over",
 						JOptionPane.INFORMATION_MESSAGE);
 			} else {
-				if (winners[1] != null) {
-					winner = new AbstractMap.SimpleEntry<>(
-							winners[0].dominates(winners[1]) 
-							? winners[1] : winners[0], winner.getValue());
-				}
 				JOptionPane.showMessageDialog(this, 
-						"Game Over! Winner is: " + winner.getKey(), 
+						"Game Over! Winner is: " + winner, 
 						"Game Over",
 						JOptionPane.INFORMATION_MESSAGE);
 			}
-		} else if (gameOverCnt == kings.length - 1) {
-			autoFinish();
-		}
-		SwingUtilities.invokeLater(() -> {
-			kingdoms.repaint();
-			repaint();
 		});
 	}
 
@@ -392,17 +475,107 @@ outer:
 				}
 			}
 			if(idx == -1) return;
-			if (kings[idx].gameOver) return;
-			final King king = kings[idx];
-			playerManager.selectMove(king, d);
+			// (ignored unless the king's seat is taken by the keyboard and its move is pending)
+			keyboard[idx].select(d);
+		}
+	};
+
+	/** Mirrors the changes of the game state on screen */
+	private final TonccEngine.Listener engineListener = new TonccEngine.Listener() {
+		@Override
+		public void kingMoved(King king, int cellIndex) {
+			placeKing(king, cellIndex);
+		}
+
+		@Override
+		public void cellCaptured(TonccCell.Id cellId, King king) {
+			final TonccCellRenderer kgCell = kgCellRenderers.get(cellId);
+			kgCell.setOwner(king);
+			// the cell turns gray on the table and takes `king`'s colour in the kingdoms
+			updater.damage(kgCell);
+			updater.damage(cellRenderers.get(cellId));
+		}
+
+		@Override
+		public void scoreChanged(King king, int score, int tokens) {
+			playerManager.updateScore(king, score, tokens);
+		}
+
+		@Override
+		public void kingFinished(King king, int score) {
+			// Place the king back on the MIND
+			placeKing(king, TonccEngine.MIND_INDEX);
+		}
+
+		@Override
+		public void gameOver(King winner) {
+			if (recordFile != null) {
+				try (TonccRecord.Writer out = TonccRecord.Writer.append(recordFile)) {
+					out.write(engine.getRecord());
+				} catch (IOException e) {
+					System.err.println("[ ERROR ] Couldn't record the game:");
+					e.printStackTrace();
+				}
+			}
+			showGameOver(winner);
+		}
+
+		@Override
+		public void turnResolved() {
+			playerManager.resetMoves();
+			updateHeatmap();
+			if (analysis != null)
+				analysis.start(engine.getToncc().getLayout(), engine.getState());
+		}
+	};
+
+	private final TonccMatch.Listener matchListener = new TonccMatch.Listener() {
+		@Override
+		public void moveCommitted(King king) {
+			playerManager.moveCommitted(king);
+		}
+
+		@Override
+		public void matchFailed(King king, Throwable error) {
+			System.err.println("[ ERROR ] The player of " + king + " failed:");
+			error.printStackTrace();
 		}
 	};
 
+	final TonccEngine engine;
+	/** Shows the changes of each turn on screen at once */
+	final FrameUpdater updater = new FrameUpdater();
+	/** Asks the players for their moves and resolves the turns, on the EDT */
+	private final TonccMatch match;
+	/** The player at the keyboard on each seat */
+	private final KeyboardPlayer[] keyboard = new KeyboardPlayer[King.values().length];
+	private TonccMcts mcts;
+	/** How the kings are expected to move in the heatmap, or null if it's hidden (only accessed on the EDT) */
+	private TonccHeatmap.Model heatmapModel;
+	/** Plays out the current position, if not null */
+	private TonccAnalysis analysis;
+	private AnalysisPanel analysisPanel;
+	/** Computes the analyses shown on screen, off the EDT */
+	private final ExecutorService analysisExecutor = Executors.newSingleThreadExecutor(r -> {
+		final Thread t = new Thread(r, "TonccAnalysis");
+		t.setDaemon(true);
+		return t;
+	});
+	/** Runs the searches of the computer players, off the EDT */
+	private final ExecutorService botExecutor = Executors.newSingleThreadExecutor(r -> {
+		final Thread t = new Thread(r, "TonccBots");
+		t.setDaemon(true);
+		return t;
+	});
+	/** The file where the finished games are appended (see TonccRecord), or null */
+	private java.nio.file.Path recordFile;
 	King[] kings = new King[King.values().length];
-	java.util.List<King> activeKings = new ArrayList<>();
 	final static int[] kingXOffset = new int[] { 0, KING_SIZE*2/3, KING_SIZE/3 };
 	final static int[] kingYOffset = new int[] { 0, 0, KING_SIZE/2 };
 
+	/** The labels showing the keys of each direction */
+	private final Map<Direction, JLabel> hints = new EnumMap<>(Direction.class);
+
 	/** The references to all cells in the toncc, indexed from 0 to TONCC_CELLS_NUM-1 */
 	java.util.List<TonccCellRenderer> cells = new ArrayList<>();
 }
@@ -0,0 +1,92 @@
+package toncc;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/** The probability that each king captures each cell in the next turn,
+ * found by resolving all the joint moves of the kings still playing (at
+ * most 6^3 = 216) with the rules of TonccState.applyTurn(), so the
+ * wrapping of the borders and the contests for a cell are exact. Each
+ * joint move is weighted by a Model of how the kings choose their moves,
+ * the kings choosing independently of each other.
+ *
+ * @license GNU GPL v3
+ * @author Giacomo Parolini
+ */
+public final class TonccHeatmap {
+
+	/** How a king is expected to move */
+	public interface Model {
+		/** Fills `weights` with the probability of each move of `king` (by index in Direction.HEX),
+		 * summing to 1.
+		 *  @param layout The placement of the cells, as given by Toncc.getLayout()
+		 *  @param state The packed state of the game (see TonccState)
+		 *  @param king The ordinal of the king (which is still playing)
+		 */
+		void moveWeights(byte[] layout, long state, int king, double[] weights);
+	}
+
+	/** All moves are equally likely */
+	public static final Model UNIFORM = (layout, state, king, weights) ->
+		Arrays.fill(weights, 1. / Direction.HEX_NUM);
+
+	private TonccHeatmap() {}
+
+	/** @return the model of a king moving with `policy`, its probabilities estimated from
+	 *  `samples` moves (drawn with a generator seeded by the position, so they're reproducible)
+	 */
+	public static Model of(final TonccPolicy policy, final int samples) {
+		return (layout, state, king, weights) -> {
+			final SplittableRandom rng = new SplittableRandom(state * 31 + king);
+			Arrays.fill(weights, 0);
+			for (int i = 0; i < samples; ++i)
+				weights[policy.selectMove(layout, state, king, rng)] += 1. / samples;
+		};
+	}
+
+	/** @return { king => { MIND index => probability of capturing that cell in the next turn } } */
+	public static double[][] compute(final byte[] layout, final long state, final Model model) {
+		final double[][] out = new double[TonccState.KINGS_NUM][Toncc.TONCC_CELLS_NUM];
+		compute(layout, state, model, out);
+		return out;
+	}
+
+	/** Computes the probabilities into `out` (see compute(byte[], long, Model)) */
+	public static void compute(final byte[] layout, final long state, final Model model, final double[][] out) {
+		for (double[] row : out)
+			Arrays.fill(row, 0);
+		if (TonccState.isOver(state))
+			return;
+		// The moves of a king out of the game don't matter: it only "plays" move 0
+		final double[][] w = new double[TonccState.KINGS_NUM][Direction.HEX_NUM];
+		final int[] nMoves = new int[TonccState.KINGS_NUM];
+		for (int k = 0; k < TonccState.KINGS_NUM; ++k) {
+			if (TonccState.isGameOver(state, k)) {
+				w[k][0] = 1;
+				nMoves[k] = 1;
+			} else {
+				model.moveWeights(layout, state, k, w[k]);
+				nMoves[k] = Direction.HEX_NUM;
+			}
+		}
+		final long[] owned = new long[TonccState.KINGS_NUM];
+		for (int k = 0; k < TonccState.KINGS_NUM; ++k)
+			owned[k] = TonccState.ownerMask(state, k);
+		for (int red = 0; red < nMoves[0]; ++red) {
+			if (w[0][red] == 0) continue;
+			for (int blue = 0; blue < nMoves[1]; ++blue) {
+				final double pRB = w[0][red] * w[1][blue];
+				if (pRB == 0) continue;
+				for (int yellow = 0; yellow < nMoves[2]; ++yellow) {
+					final double p = pRB * w[2][yellow];
+					if (p == 0) continue;
+					final long next = TonccState.applyTurn(layout, state, red, blue, yellow);
+					for (int k = 0; k < TonccState.KINGS_NUM; ++k) {
+						for (long m = TonccState.ownerMask(next, k) & ~owned[k]; m != 0; m &= m - 1)
+							out[k][Long.numberOfTrailingZeros(m) >> 1] += p;
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package toncc;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.Map;
+
+/** Paints the probabilities of a TonccHeatmap over the cells of a table:
+ * each cell gets a pie with a slice per king, the more opaque the more
+ * likely that king is to capture it next turn. It's transparent to the
+ * mouse and to everything but the cells it covers.
+ *
+ * @license GNU GPL v3
+ * @author Giacomo Parolini
+ */
+class TonccHeatmapRenderer extends JComponent {
+
+	/** @param cells The renderers of the cells of the table, which must be siblings of this */
+	public TonccHeatmapRenderer(final Map<TonccCell.Id, TonccCellRenderer> cells) {
+		this.cells = cells;
+		setOpaque(false);
+	}
+
+	/** Shows the probabilities `heatmap` (see TonccHeatmap.compute()), or nothing if it's null */
+	public void setHeatmap(final double[][] heatmap) {
+		this.heatmap = heatmap;
+		repaint();
+	}
+
+	@Override
+	public boolean contains(final int x, final int y) {
+		return false;
+	}
+
+	@Override
+	protected void paintComponent(final Graphics gg) {
+		final double[][] heat = heatmap;
+		if (heat == null) return;
+		final Graphics2D g = (Graphics2D)gg.create();
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		final int sliceAngle = 360 / TonccState.KINGS_NUM;
+		for (Map.Entry<TonccCell.Id, TonccCellRenderer> e : cells.entrySet()) {
+			if (e.getKey() == TonccCell.Id.MIND) continue;
+			final Rectangle b = e.getValue().getBounds();
+			final int d = b.width * 3 / 5;
+			final int x = b.x + (b.width - d) / 2, y = b.y + (b.height - d) / 2;
+			for (King king : King.values()) {
+				final double p = heat[king.ordinal()][e.getKey().ordinal()];
+				if (p <= 0) continue;
+				final Color c = king.getColor();
+				g.setColor(new Color(c.getRed(), c.getGreen(), c.getBlue(), (int)Math.round(MAX_ALPHA * Math.min(p, 1))));
+				g.fillArc(x, y, d, d, 90 + king.ordinal() * sliceAngle, sliceAngle);
+			}
+		}
+		g.dispose();
+	}
+
+	/////// PRIVATE METHODS AND FIELDS ///////
+
+	/** Opacity of a certain capture */
+	private static final int MAX_ALPHA = 220;
+
+	private final Map<TonccCell.Id, TonccCellRenderer> cells;
+	private volatile double[][] heatmap;
+}
@@ -0,0 +1,131 @@
+package toncc;
+
+import java.util.*;
+import java.util.function.LongConsumer;
+import java.util.stream.*;
+
+/** A reproducible stream of random layout ids (see Toncc.getId()) which
+ * can be split among parallel workers.
+ *
+ * The index-th id of the stream of a seed is the image of index under a
+ * permutation of [0, Toncc.LAYOUTS_NUM) chosen by the seed (a Feistel
+ * network on 54 bits, walking the cycle until the result is a valid id).
+ * So each id only depends on the seed and on its index, not on how the
+ * stream is split, and disjoint ranges of indices give disjoint sets of
+ * layouts: no layout ever comes twice in the stream of a seed.
+ *
+ * @license GNU GPL v3
+ * @author Giacomo Parolini
+ */
+public class TonccLayoutGenerator implements Spliterator.OfLong {
+
+	/** A stream of all the layouts, in the order given by `seed` */
+	public TonccLayoutGenerator(final long seed) {
+		this(seed, 0, Toncc.LAYOUTS_NUM);
+	}
+
+	/** The stream of the layouts with indices in [from, to) in the order given by `seed` */
+	public TonccLayoutGenerator(final long seed, final long from, final long to) {
+		this(roundKeys(seed), from, to);
+	}
+
+	/** @return the sequential stream of the first `count` layout ids in the order given by `seed` */
+	public static LongStream ids(final long seed, final long count) {
+		return StreamSupport.longStream(new TonccLayoutGenerator(seed, 0, count), false);
+	}
+
+	/** @return the id at position `index` of the stream (whatever part of it this generator covers) */
+	public long id(final long index) {
+		if (index < 0 || index >= Toncc.LAYOUTS_NUM)
+			throw new IllegalArgumentException("Invalid index: " + index);
+		long x = index;
+		do {
+			x = permute(x);
+		} while (x >= Toncc.LAYOUTS_NUM);
+		return x;
+	}
+
+	/** @return the next table of the stream, or null if there are no more */
+	public Toncc nextToncc() {
+		return from < to ? Toncc.fromId(id(from++)) : null;
+	}
+
+	@Override
+	public boolean tryAdvance(final LongConsumer action) {
+		if (from >= to)
+			return false;
+		action.accept(id(from++));
+		return true;
+	}
+
+	@Override
+	public void forEachRemaining(final LongConsumer action) {
+		while (from < to)
+			action.accept(id(from++));
+	}
+
+	/** Gives away the first half of the remaining ids */
+	@Override
+	public TonccLayoutGenerator trySplit() {
+		final long mid = (from + to) >>> 1;
+		if (mid <= from)
+			return null;
+		final TonccLayoutGenerator prefix = new TonccLayoutGenerator(keys, from, mid);
+		from = mid;
+		return prefix;
+	}
+
+	@Override
+	public long estimateSize() {
+		return to - from;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | DISTINCT | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+	}
+
+	/////// PRIVATE METHODS AND FIELDS ///////
+
+	private static final int ROUNDS = 6;
+	/** Bits of each half of the Feistel network: 2^54 > 18! */
+	private static final int HALF_BITS = 27;
+	private static final long HALF_MASK = (1L << HALF_BITS) - 1;
+
+	private TonccLayoutGenerator(final long[] keys, final long from, final long to) {
+		if (from < 0 || to < from || to > Toncc.LAYOUTS_NUM)
+			throw new IllegalArgumentException("Invalid range: [" + from + ", " + to + ")");
+		this.keys = keys;
+		this.from = from;
+		this.to = to;
+	}
+
+	private static long[] roundKeys(final long seed) {
+		final SplittableRandom rng = new SplittableRandom(seed);
+		final long[] keys = new long[ROUNDS];
+		for (int r = 0; r < ROUNDS; ++r)
+			keys[r] = rng.nextLong();
+		return keys;
+	}
+
+	/** A bijection of [0, 2^54) */
+	private long permute(final long x) {
+		long left = x >>> HALF_BITS, right = x & HALF_MASK;
+		for (long key : keys) {
+			final long t = right;
+			right = left ^ (mix(right ^ key) & HALF_MASK);
+			left = t;
+		}
+		return (left << HALF_BITS) | right;
+	}
+
+	/** The finalizer of SplitMix64 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	private final long[] keys;
+	private long from, to;
+}
@@ -0,0 +1,196 @@
+package toncc;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/** Plays a game on a TonccEngine with a Player on each seat: at each turn
+ * it asks the players of the kings still playing for their moves, and
+ * applies the turn as soon as they have all committed, then goes on with
+ * the next one, until the game is over. Nothing waits on a timer or on the
+ * UI, so a game among players which are always ready runs at full speed.
+ *
+ * The engine is only touched through `executor` (e.g. the EDT, for a game
+ * on screen), and so are the listeners called. With a direct executor
+ * (Runnable::run) the turns are resolved on the thread which completes
+ * the last move, and start() plays the whole game before returning if no
+ * move is ever pending.
+ *
+ * @license GNU GPL v3
+ * @author Giacomo Parolini
+ */
+public class TonccMatch {
+
+	/** Observes the progress of the match; called through the executor */
+	public interface Listener {
+		/** The player of `king` has committed its move for this turn */
+		default void moveCommitted(King king) {}
+		/** The match was stopped by an error of a player */
+		default void matchFailed(King king, Throwable error) {}
+	}
+
+	public TonccMatch(final TonccEngine engine, final Executor executor) {
+		this.engine = engine;
+		this.executor = executor;
+	}
+
+	/** Seats `player` on `king`. If the match is started, the move pending for that
+	 * king (if it's not committed yet) is cancelled and asked to the new player instead.
+	 * The player previously on that seat is not closed.
+	 */
+	public void setPlayer(final King king, final Player player) {
+		executor.execute(() -> {
+			synchronized (this) {
+				players.put(king, player);
+				final CompletableFuture<Direction> move = pending.get(king);
+				if (move != null && !move.isDone()) {
+					pending.remove(king);
+					move.cancel(false);
+					request(king);
+				}
+			}
+		});
+	}
+
+	public synchronized Player getPlayer(final King king) {
+		return players.get(king);
+	}
+
+	/** Starts the game: all the seats of the kings still playing must be taken.
+	 * @return a future completed with the engine when the game is over (or stopped)
+	 */
+	public CompletableFuture<TonccEngine> start() {
+		executor.execute(this::play);
+		return done;
+	}
+
+	/** Stops the game, cancelling the pending moves: the turn being played is not resolved */
+	public void stop() {
+		executor.execute(() -> {
+			synchronized (this) {
+				stopped = true;
+				cancelPending();
+				done.complete(engine);
+			}
+		});
+	}
+
+	/** Stops the game and closes all the players */
+	public void close() {
+		executor.execute(() -> {
+			synchronized (this) {
+				stopped = true;
+				cancelPending();
+				for (Player player : players.values())
+					player.close();
+				players.clear();
+				done.complete(engine);
+			}
+		});
+	}
+
+	public void addListener(final Listener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(final Listener listener) {
+		listeners.remove(listener);
+	}
+
+	/////// PRIVATE METHODS AND FIELDS ///////
+
+	/** Plays the turns whose moves are ready at once, then leaves the rest to the
+	 * moves still pending: the last one to be committed resolves the turn and calls
+	 * this again. Everything runs under the lock of the match, as with a direct
+	 * executor the moves may be committed on the players' threads.
+	 */
+	private synchronized void play() {
+		while (!stopped && !engine.isOver()) {
+			++round;
+			committed = 0;
+			requesting = true;
+			for (King king : King.values()) {
+				if (!stopped && !engine.isGameOver(king))
+					request(king);
+			}
+			requesting = false;
+			if (stopped || committed < engine.getActiveKings())
+				return;
+			resolveTurn();
+		}
+		done.complete(engine);
+	}
+
+	/** Asks `king`'s player for its move, which is committed through the executor */
+	private void request(final King king) {
+		final Player player = players.get(king);
+		CompletableFuture<Direction> move;
+		try {
+			if (player == null)
+				throw new IllegalStateException("No player on the seat of " + king);
+			move = player.requestMove(engine.getToncc().getLayout(), engine.getState(), king);
+		} catch (RuntimeException e) {
+			move = new CompletableFuture<>();
+			move.completeExceptionally(e);
+		}
+		pending.put(king, move);
+		final CompletableFuture<Direction> m = move;
+		final long req = round;
+		move.whenComplete((dir, e) -> executor.execute(() -> commit(king, m, req)));
+	}
+
+	private synchronized void commit(final King king, final CompletableFuture<Direction> move, final long req) {
+		// (ignore the moves of the turns already resolved or given up)
+		if (stopped || req != round || pending.get(king) != move)
+			return;
+		try {
+			final Direction dir = move.join();
+			if (dir == null || dir.hexIndex() < 0)
+				throw new IllegalArgumentException("Invalid move of " + king + ": " + dir);
+		} catch (CompletionException | CancellationException | IllegalArgumentException e) {
+			final Throwable error = e instanceof CompletionException ? e.getCause() : e;
+			stopped = true;
+			cancelPending();
+			for (Listener l : listeners)
+				l.matchFailed(king, error);
+			done.completeExceptionally(error);
+			return;
+		}
+		++committed;
+		for (Listener l : listeners)
+			l.moveCommitted(king);
+		if (!requesting && committed == engine.getActiveKings()) {
+			resolveTurn();
+			play();
+		}
+	}
+
+	private void resolveTurn() {
+		final Direction[] moves = new Direction[King.values().length];
+		for (Map.Entry<King, CompletableFuture<Direction>> e : pending.entrySet())
+			moves[e.getKey().ordinal()] = e.getValue().join();
+		pending.clear();
+		engine.applyTurn(moves[0], moves[1], moves[2]);
+	}
+
+	private void cancelPending() {
+		final java.util.List<CompletableFuture<Direction>> moves = new ArrayList<>(pending.values());
+		pending.clear();
+		for (CompletableFuture<Direction> move : moves)
+			move.cancel(false);
+	}
+
+	private final TonccEngine engine;
+	private final Executor executor;
+	private final Map<King, Player> players = new EnumMap<>(King.class);
+	/** The moves asked for in this turn */
+	private final Map<King, CompletableFuture<Direction>> pending = new EnumMap<>(King.class);
+	/** Counts the rounds of requests, to tell stale answers apart */
+	private long round;
+	/** The moves of this round committed so far */
+	private int committed;
+	/** True while play() is asking for the moves of a round (it then resolves the turn itself) */
+	private boolean requesting;
+	private boolean stopped;
+	private final CompletableFuture<TonccEngine> done = new CompletableFuture<>();
+	private final java.util.List<Listener> listeners = new CopyOnWriteArrayList<>();
+}
@@ -0,0 +1,404 @@
+package toncc;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/** Monte Carlo Tree Search for the simultaneous moves of the three kings
+ * (decoupled UCT): each node of the tree keeps separate statistics for
+ * the moves of each king, each king chooses its move by UCB1 on its own
+ * statistics, and the resulting joint move selects the child node.
+ * Playouts are played with a TonccPolicy and rewarded with the real
+ * outcome of the game (1 to the winner, 1/3 to each king in a draw).
+ *
+ * Searches use root parallelism: each thread grows its own tree from the
+ * same position, and the statistics of the roots are summed at the end.
+ * The trees are kept after a search: the next one goes on from the same
+ * root, or from its child reached by the joint move which was actually
+ * played. Between its turns, a player may also ponder(), growing the
+ * trees in the background while the others are thinking.
+ *
+ * @license GNU GPL v3
+ * @author Giacomo Parolini
+ */
+public class TonccMcts {
+
+	/** Exploration constant of UCB1 */
+	public static final double EXPLORATION = 0.7;
+	/** Playouts lasting longer than this many turns are considered draws */
+	public static final int MAX_PLAYOUT_TURNS = 200;
+	/** Pondering stops when the trees have this many visits at their roots in all
+	 * (about as many nodes), to bound the memory it takes whatever the number of threads
+	 */
+	public static final int MAX_PONDER_VISITS = 1 << 18;
+
+	/** @param threads Number of threads searching in parallel
+	 *  @param playoutPolicy The policy used by all kings in the playouts
+	 */
+	public TonccMcts(final int threads, final TonccPolicy playoutPolicy) {
+		this.threads = threads;
+		this.playoutPolicy = playoutPolicy;
+		trees = new Tree[threads];
+		pool = Executors.newFixedThreadPool(threads, r -> {
+			final Thread t = new Thread(r, "TonccMcts");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	public TonccMcts() {
+		this(Runtime.getRuntime().availableProcessors(), TonccPolicy.GREEDY);
+	}
+
+	/** Searches the current position of `engine` for `millis` milliseconds.
+	 * @return the best move for `king`
+	 */
+	public Direction selectMove(final TonccEngine engine, final King king, final long millis) {
+		return Direction.HEX[search(engine.getToncc().getLayout(), engine.getState(),
+				king.ordinal(), millis, Long.MAX_VALUE)];
+	}
+
+	/** Searches the given position on all threads until `millis` milliseconds
+	 * have passed or `maxIterations` iterations have been done per thread.
+	 * Interrupting the calling thread stops the search on all threads: the
+	 * result is then the best move found so far, with the interrupt status set.
+	 * @return the index in Direction.HEX of the best move for `king`
+	 */
+	public synchronized int search(final byte[] layout, final long state, final int king,
+			final long millis, final long maxIterations) {
+		final int known = tablebaseMove(layout, state, king);
+		if (known >= 0) {
+			lastIterations = lastReusedVisits = 0;
+			return known;
+		}
+		stopPondering();
+		final long deadline = System.nanoTime() + millis * 1_000_000L;
+		final List<Future<Tree>> roots = grow(layout, state, deadline, maxIterations, Integer.MAX_VALUE, null);
+		final int[] visits = new int[Direction.HEX_NUM];
+		long iterations = 0, reused = 0;
+		for (int i = 0; i < roots.size(); ++i) {
+			try {
+				final Tree tree = roots.get(i).get();
+				trees[i] = tree;
+				iterations += tree.iterations;
+				reused += tree.root.total - tree.iterations;
+				for (int a = 0; a < Direction.HEX_NUM; ++a)
+					visits[a] += tree.root.visits[king * Direction.HEX_NUM + a];
+			} catch (InterruptedException | CancellationException e) {
+				// The search was cancelled: stop all threads
+				for (Future<Tree> r : roots)
+					r.cancel(true);
+				Arrays.fill(trees, null);
+				Thread.currentThread().interrupt();
+				break;
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+		lastIterations = iterations;
+		lastReusedVisits = reused;
+		return mostVisited(visits, 0);
+	}
+
+	/** Keeps searching the given position on all threads in the background, until
+	 * the next search (which goes on from the trees grown meanwhile) or until
+	 * stopPondering(). Does nothing if that position is being pondered already.
+	 */
+	public synchronized void ponder(final byte[] layout, final long state) {
+		if (pondering != null && ponderState == state && Arrays.equals(ponderLayout, layout))
+			return;
+		stopPondering();
+		if (TonccState.isOver(state))
+			return;
+		ponderStop = new AtomicBoolean();
+		ponderLayout = layout;
+		ponderState = state;
+		pondering = grow(layout, state, Long.MAX_VALUE, Long.MAX_VALUE,
+				Math.max(1, MAX_PONDER_VISITS / threads), ponderStop);
+	}
+
+	/** Stops pondering, keeping the trees grown so far */
+	public synchronized void stopPondering() {
+		if (pondering == null)
+			return;
+		ponderStop.set(true);
+		try {
+			for (int i = 0; i < pondering.size(); ++i)
+				trees[i] = pondering.get(i).get();
+		} catch (InterruptedException e) {
+			Arrays.fill(trees, null);
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException | CancellationException e) {
+			Arrays.fill(trees, null);
+		}
+		pondering = null;
+	}
+
+	/** @return a policy searching `iterations` iterations on the calling thread */
+	public TonccPolicy asPolicy(final long iterations) {
+		return (layout, state, king, rng) -> {
+			final int known = tablebaseMove(layout, state, king);
+			if (known >= 0)
+				return known;
+			final Tree tree = new Tree(layout, state, rng.split());
+			for (long n = 0; n < iterations; ++n)
+				tree.iterate();
+			return mostVisited(tree.root.visits, king * Direction.HEX_NUM);
+		};
+	}
+
+	/** Plays the moves of `tablebase` in the positions it knows, without searching, unless the king
+	 * can only secure a LOSS there (null to always search)
+	 */
+	public void setTablebase(final TonccTablebase tablebase) {
+		this.tablebase = tablebase;
+	}
+
+	/** @return the total number of iterations done by the last search */
+	public long getLastIterations() { return lastIterations; }
+
+	/** @return the visits at the root which the last search found already done, by the previous
+	 *  search or by pondering
+	 */
+	public long getLastReusedVisits() { return lastReusedVisits; }
+
+	/** Stops the search threads */
+	public void shutdown() {
+		final AtomicBoolean stop = ponderStop;
+		if (stop != null)
+			stop.set(true);
+		pool.shutdownNow();
+	}
+
+	/////// PRIVATE METHODS AND FIELDS ///////
+
+	private static final int JOINT_MOVES = Direction.HEX_NUM * Direction.HEX_NUM * Direction.HEX_NUM;
+	private static final int MAX_DEPTH = 256;
+
+	/** A position in the tree, with the statistics of each king's moves */
+	private static final class Node {
+		Node(final long state) {
+			this.state = state;
+		}
+
+		Node child(final int joint) {
+			for (int i = 0; i < nChildren; ++i)
+				if (childMoves[i] == joint) return children[i];
+			return null;
+		}
+
+		Node addChild(final int joint, final long state) {
+			if (nChildren == children.length) {
+				childMoves = Arrays.copyOf(childMoves, Math.min(JOINT_MOVES, nChildren * 2));
+				children = Arrays.copyOf(children, childMoves.length);
+			}
+			final Node child = new Node(state);
+			childMoves[nChildren] = joint;
+			children[nChildren++] = child;
+			return child;
+		}
+
+		final long state;
+		/** { king * HEX_NUM + move => number of visits / total reward } */
+		final int[] visits = new int[TonccState.KINGS_NUM * Direction.HEX_NUM];
+		final double[] rewards = new double[TonccState.KINGS_NUM * Direction.HEX_NUM];
+		int total;
+		int[] childMoves = new int[4];
+		Node[] children = new Node[4];
+		int nChildren;
+	}
+
+	/** A search tree owned by a single thread at a time */
+	private final class Tree {
+		Tree(final byte[] layout, final long state, final SplittableRandom rng) {
+			this.layout = layout;
+			this.rng = rng;
+			root = new Node(state);
+		}
+
+		/** Moves the root to the node of `state`, if it's the root itself or one of its
+		 * children (the position after the joint move which was played).
+		 * @return false if there is no such node
+		 */
+		boolean reroot(final byte[] layout, final long state) {
+			if (!Arrays.equals(this.layout, layout))
+				return false;
+			if (root.state == state)
+				return true;
+			for (int i = 0; i < root.nChildren; ++i) {
+				if (root.children[i].state == state) {
+					root = root.children[i];
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/** Selects a path down the tree, expands a node, plays out the game and backs up the result */
+		void iterate() {
+			Node node = root;
+			int depth = 0;
+			while (true) {
+				if (TonccState.isOver(node.state)) {
+					reward(node.state);
+					break;
+				}
+				if (depth == MAX_DEPTH) {
+					playout(node.state);
+					break;
+				}
+				final int joint = select(node, 0) * 36 + select(node, 1) * 6 + select(node, 2);
+				path[depth] = node;
+				pathMoves[depth++] = joint;
+				final Node child = node.child(joint);
+				if (child == null) {
+					final long next = TonccState.applyTurn(layout, node.state,
+							joint / 36, joint / 6 % 6, joint % 6);
+					playout(node.addChild(joint, next).state);
+					break;
+				}
+				node = child;
+			}
+			// Backpropagation
+			for (int d = 0; d < depth; ++d) {
+				final Node n = path[d];
+				++n.total;
+				for (int k = 0; k < TonccState.KINGS_NUM; ++k) {
+					if (TonccState.isGameOver(n.state, k)) continue;
+					final int a = k * Direction.HEX_NUM + jointMove(pathMoves[d], k);
+					++n.visits[a];
+					n.rewards[a] += reward[k];
+				}
+			}
+			if (depth == 0)
+				++root.total;
+		}
+
+		/** @return the move of `king` at `node` maximizing UCB1 (0 if the king is out) */
+		private int select(final Node node, final int king) {
+			if (TonccState.isGameOver(node.state, king))
+				return 0;
+			final int base = king * Direction.HEX_NUM;
+			final double logTotal = Math.log(node.total + 1);
+			int best = 0, ties = 0;
+			double bestValue = Double.NEGATIVE_INFINITY;
+			for (int a = 0; a < Direction.HEX_NUM; ++a) {
+				final int n = node.visits[base + a];
+				final double value = n == 0 ? Double.MAX_VALUE
+					: node.rewards[base + a] / n + EXPLORATION * Math.sqrt(logTotal / n);
+				if (value > bestValue) {
+					best = a;
+					bestValue = value;
+					ties = 1;
+				} else if (value == bestValue && rng.nextInt(++ties) == 0) {
+					best = a;
+				}
+			}
+			return best;
+		}
+
+		/** Plays the game until the end from `state` and sets the reward of each king */
+		private void playout(long state) {
+			for (int turn = 0; turn < MAX_PLAYOUT_TURNS && !TonccState.isOver(state); ++turn) {
+				final int red = TonccState.isGameOver(state, 0) ? 0
+					: playoutPolicy.selectMove(layout, state, 0, rng);
+				final int blue = TonccState.isGameOver(state, 1) ? 0
+					: playoutPolicy.selectMove(layout, state, 1, rng);
+				final int yellow = TonccState.isGameOver(state, 2) ? 0
+					: playoutPolicy.selectMove(layout, state, 2, rng);
+				state = TonccState.applyTurn(layout, state, red, blue, yellow);
+			}
+			if (TonccState.isOver(state))
+				reward(state);
+			else
+				Arrays.fill(reward, 1. / TonccState.KINGS_NUM);
+		}
+
+		private void reward(final long state) {
+			final King winner = TonccState.winner(state);
+			for (int k = 0; k < TonccState.KINGS_NUM; ++k)
+				reward[k] = winner == null ? 1. / TonccState.KINGS_NUM
+					: winner.ordinal() == k ? 1 : 0;
+		}
+
+		Node root;
+		/** The iterations done by the last search of this tree */
+		long iterations;
+		private final byte[] layout;
+		private final SplittableRandom rng;
+		private final Node[] path = new Node[MAX_DEPTH];
+		private final int[] pathMoves = new int[MAX_DEPTH];
+		private final double[] reward = new double[TonccState.KINGS_NUM];
+	}
+
+	/** @return the move of `king` in the joint move `joint` (see Node) */
+	static int jointMove(final int joint, final int king) {
+		switch (king) {
+		case 0: return joint / 36;
+		case 1: return joint / 6 % 6;
+		default: return joint % 6;
+		}
+	}
+
+	/** Grows a tree on each thread from the given position, reusing the kept trees where
+	 * possible, until the deadline, the number of iterations or of visits at the root is
+	 * reached, or `stop` (if not null) is set.
+	 */
+	private List<Future<Tree>> grow(final byte[] layout, final long state, final long deadline,
+			final long maxIterations, final int maxVisits, final AtomicBoolean stop) {
+		final List<Future<Tree>> roots = new ArrayList<>(threads);
+		final long seed = seeds.nextLong();
+		for (int i = 0; i < threads; ++i) {
+			final Tree kept = trees[i];
+			trees[i] = null;
+			final Tree tree = kept != null && kept.reroot(layout, state) ? kept
+				: new Tree(layout, state, new SplittableRandom(seed + i));
+			roots.add(pool.submit(() -> {
+				final Thread self = Thread.currentThread();
+				long n = 0;
+				while (n < maxIterations && tree.root.total < maxVisits && System.nanoTime() < deadline
+						&& !self.isInterrupted() && (stop == null || !stop.get())) {
+					tree.iterate();
+					++n;
+				}
+				tree.iterations = n;
+				return tree;
+			}));
+		}
+		return roots;
+	}
+
+	/** @return the move of `king` given by the tablebase, or -1 if it doesn't know the position
+	 *  or `king` has no best move there (it can only secure a LOSS: search it instead)
+	 */
+	private int tablebaseMove(final byte[] layout, final long state, final int king) {
+		final TonccTablebase tb = tablebase;
+		if (tb == null) return -1;
+		final int entry = tb.probe(layout, state);
+		if (entry == TonccTablebase.MISSING) return -1;
+		final int move = TonccTablebase.move(entry, king);
+		return move == TonccTablebase.NO_MOVE ? -1 : move;
+	}
+
+	/** @return the index (from `base`) of the most visited move among visits[base .. base + HEX_NUM) */
+	private static int mostVisited(final int[] visits, final int base) {
+		int best = 0;
+		for (int a = 1; a < Direction.HEX_NUM; ++a)
+			if (visits[base + a] > visits[base + best]) best = a;
+		return best;
+	}
+
+	private final int threads;
+	private final TonccPolicy playoutPolicy;
+	private final ExecutorService pool;
+	private final SplittableRandom seeds = new SplittableRandom();
+	/** The trees of the last search or pondering, one per thread (null when lost) */
+	private final Tree[] trees;
+	/** The pondering in progress, if any */
+	private List<Future<Tree>> pondering;
+	private volatile AtomicBoolean ponderStop;
+	private byte[] ponderLayout;
+	private long ponderState;
+	private volatile long lastIterations, lastReusedVisits;
+	private volatile TonccTablebase tablebase;
+}
@@ -0,0 +1,49 @@
+package toncc;
+
+import java.util.SplittableRandom;
+
+/** A strategy choosing the move of a king from a packed game state.
+ * Implementations must be thread-safe: the same policy is used by many
+ * games at once, each passing its own random generator.
+ *
+ * @license GNU GPL v3
+ * @author Giacomo Parolini
+ */
+public interface TonccPolicy {
+
+	/** @param layout The placement of the cells, as given by Toncc.getLayout()
+	 *  @param state The packed state of the game (see TonccState)
+	 *  @param king The ordinal of the king to move (which is still playing)
+	 *  @param rng The random generator of the calling thread
+	 *  @return the index in Direction.HEX of the chosen move
+	 */
+	int selectMove(byte[] layout, long state, int king, SplittableRandom rng);
+
+	/** Moves at random */
+	TonccPolicy RANDOM = (layout, state, king, rng) -> rng.nextInt(Direction.HEX_NUM);
+
+	/** Moves onto the free cell giving the most points, if any (preferring
+	 * cells of its own color, where it always prevails), else moves at random.
+	 */
+	TonccPolicy GREEDY = (layout, state, king, rng) -> {
+		final int from = TonccState.position(state, king);
+		final long owned = TonccState.ownerMask(state, king);
+		int best = -1, bestValue = 0, ties = 0;
+		for (int dir = 0; dir < Direction.HEX_NUM; ++dir) {
+			final int cell = layout[TonccCoordinate.step(from, dir)];
+			if (TonccState.owner(state, cell) != 0)
+				continue;
+			int value = 2 + 2 * TonccRules.captureScore(owned | (1L << (cell << 1)), king, cell);
+			if (TonccRules.CELL_COLOR[cell] == king)
+				++value;
+			if (value > bestValue) {
+				best = dir;
+				bestValue = value;
+				ties = 1;
+			} else if (value == bestValue && rng.nextInt(++ties) == 0) {
+				best = dir;
+			}
+		}
+		return best >= 0 ? best : rng.nextInt(Direction.HEX_NUM);
+	};
+}
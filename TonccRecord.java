@@ -0,0 +1,249 @@
+package toncc;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.Arrays;
+
+/** The record of a game: the id of the layout of the table (see
+ * Toncc.getId()) and the moves of all kings at each turn, 3 bits per
+ * king per turn (the index in Direction.HEX, or NO_MOVE for the kings
+ * out of the game). Everything else can be recomputed by replaying it.
+ *
+ * In a file, a record is written as the layout id and the number of
+ * turns (both as variable-length integers) followed by the moves, packed
+ * in 9 bits per turn: a game of 15 turns takes 27 bytes at most. A file
+ * of records starts with a magic number, followed by the records one
+ * after the other.
+ *
+ * @license GNU GPL v3
+ * @author Giacomo Parolini
+ */
+public final class TonccRecord {
+
+	/** The move of a king which is out of the game */
+	public static final int NO_MOVE = 7;
+
+	/** Collects the moves of a game as it is played */
+	public static class Builder {
+		public Builder(final long layoutId) {
+			this.layoutId = layoutId;
+		}
+
+		/** Appends a turn: the index in Direction.HEX of each king's move, or NO_MOVE */
+		public Builder add(final int red, final int blue, final int yellow) {
+			final int joint = red | (blue << MOVE_BITS) | (yellow << (2 * MOVE_BITS));
+			final int bit = turns * TURN_BITS;
+			if (bit + TURN_BITS > moves.length * 8)
+				moves = Arrays.copyOf(moves, moves.length * 2);
+			for (int b = 0; b < TURN_BITS; ++b) {
+				if ((joint & (1 << b)) != 0)
+					moves[(bit + b) >> 3] |= 1 << ((bit + b) & 7);
+			}
+			++turns;
+			return this;
+		}
+
+		public int getTurns() { return turns; }
+
+		public TonccRecord build() {
+			return new TonccRecord(layoutId, turns, Arrays.copyOf(moves, movesBytes(turns)));
+		}
+
+		private final long layoutId;
+		private byte[] moves = new byte[32];
+		private int turns;
+	}
+
+	/** Writes records to a stream, through a buffer */
+	public static class Writer implements Closeable, Flushable {
+		/** Writes the magic number, then the records written to this */
+		public Writer(final OutputStream out) throws IOException {
+			this(out, true);
+		}
+
+		/** @return a writer appending records to `file`, which is created if needed */
+		public static Writer append(final Path file) throws IOException {
+			final boolean isNew = !Files.exists(file) || Files.size(file) == 0;
+			final OutputStream out = Files.newOutputStream(file, StandardOpenOption.CREATE,
+					StandardOpenOption.APPEND);
+			return new Writer(out, isNew);
+		}
+
+		/** Writes a record. Many threads may write at once. */
+		public synchronized void write(final TonccRecord record) throws IOException {
+			writeVarLong(record.layoutId);
+			writeVarLong(record.turns);
+			out.write(record.moves, 0, movesBytes(record.turns));
+		}
+
+		@Override
+		public synchronized void flush() throws IOException {
+			out.flush();
+		}
+
+		@Override
+		public synchronized void close() throws IOException {
+			out.close();
+		}
+
+		private Writer(final OutputStream out, final boolean header) throws IOException {
+			this.out = new BufferedOutputStream(out, 1 << 16);
+			if (header)
+				this.out.write(MAGIC);
+		}
+
+		private void writeVarLong(long v) throws IOException {
+			while ((v & ~0x7FL) != 0) {
+				out.write((int)(v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			out.write((int)v);
+		}
+
+		private final OutputStream out;
+	}
+
+	/** Reads the records of a stream, through a buffer */
+	public static class Reader implements Closeable {
+		public Reader(final InputStream in) throws IOException {
+			this.in = new BufferedInputStream(in, 1 << 16);
+			final byte[] magic = new byte[MAGIC.length];
+			if (this.in.read(magic) != magic.length || !Arrays.equals(magic, MAGIC))
+				throw new IOException("Not a stream of Toncc game records");
+		}
+
+		public static Reader open(final Path file) throws IOException {
+			return new Reader(Files.newInputStream(file));
+		}
+
+		/** @return the next record, or null at the end of the stream */
+		public TonccRecord read() throws IOException {
+			final int first = in.read();
+			if (first < 0)
+				return null;
+			final long layoutId = readVarLong(first);
+			final long turns = readVarLong(in.read());
+			if (layoutId >= Toncc.LAYOUTS_NUM || turns > MAX_TURNS)
+				throw new IOException("Corrupt game record");
+			final byte[] moves = new byte[movesBytes((int)turns)];
+			int n = 0;
+			while (n < moves.length) {
+				final int r = in.read(moves, n, moves.length - n);
+				if (r < 0)
+					throw new EOFException("Truncated game record");
+				n += r;
+			}
+			return new TonccRecord(layoutId, (int)turns, moves);
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+
+		private long readVarLong(int b) throws IOException {
+			long v = 0;
+			for (int shift = 0; ; shift += 7) {
+				if (b < 0)
+					throw new EOFException("Truncated game record");
+				if (shift > 56)
+					throw new IOException("Corrupt game record");
+				v |= (long)(b & 0x7F) << shift;
+				if ((b & 0x80) == 0)
+					return v;
+				b = in.read();
+			}
+		}
+
+		private final InputStream in;
+	}
+
+	public long getLayoutId() { return layoutId; }
+	public int getTurns() { return turns; }
+
+	/** @return the index in Direction.HEX of `king`'s move at `turn`, or NO_MOVE */
+	public int getMove(final int turn, final int king) {
+		return (joint(turn) >>> (king * MOVE_BITS)) & NO_MOVE;
+	}
+
+	/** @return the state after the first `turns` turns of the game (see TonccState) */
+	public long replay(final int turns) {
+		return replay(Toncc.unrank(layoutId), turns, null);
+	}
+
+	/** @return the states of the game from the beginning (index 0) to the end (index getTurns()) */
+	public long[] states() {
+		final long[] states = new long[turns + 1];
+		replay(Toncc.unrank(layoutId), turns, states);
+		return states;
+	}
+
+	/** Replays the first `turns` turns on `layout`, which must be the layout of the record,
+	 * storing the states in `states` (if it's not null).
+	 * @return the state after the last turn
+	 * @throws IllegalStateException if the record is not a legal game
+	 */
+	public long replay(final byte[] layout, final int turns, final long[] states) {
+		if (turns > this.turns)
+			throw new IllegalArgumentException("The game only has " + this.turns + " turns");
+		long s = TonccState.INITIAL;
+		if (states != null) states[0] = s;
+		for (int t = 0; t < turns; ++t) {
+			if (TonccState.isOver(s))
+				throw new IllegalStateException("Turn " + t + " played after the end of the game");
+			final int joint = joint(t);
+			for (int k = 0; k < TonccState.KINGS_NUM; ++k) {
+				final int m = (joint >>> (k * MOVE_BITS)) & NO_MOVE;
+				if ((m == NO_MOVE) != TonccState.isGameOver(s, k) || (m != NO_MOVE && m >= Direction.HEX_NUM))
+					throw new IllegalStateException("Invalid move of king " + k + " at turn " + t + ": " + m);
+			}
+			s = TonccState.applyTurn(layout, s, joint & NO_MOVE,
+					(joint >>> MOVE_BITS) & NO_MOVE, joint >>> (2 * MOVE_BITS));
+			if (states != null) states[t + 1] = s;
+		}
+		return s;
+	}
+
+	/** @return the size of this record in a file, in bytes */
+	public int encodedSize() {
+		return varLongSize(layoutId) + varLongSize(turns) + movesBytes(turns);
+	}
+
+	/////// PRIVATE METHODS AND FIELDS ///////
+
+	private static final byte[] MAGIC = { 'T', 'o', 'n', 'c', 'c', 'G', 'R', '1' };
+	private static final int MOVE_BITS = 3;
+	private static final int TURN_BITS = MOVE_BITS * TonccState.KINGS_NUM;
+	/** Longer records are considered corrupt */
+	private static final int MAX_TURNS = 1 << 20;
+
+	private TonccRecord(final long layoutId, final int turns, final byte[] moves) {
+		this.layoutId = layoutId;
+		this.turns = turns;
+		this.moves = moves;
+	}
+
+	/** @return the moves of all kings at `turn`, 3 bits per king */
+	private int joint(final int turn) {
+		final int bit = turn * TURN_BITS, i = bit >> 3;
+		// (the 9 bits span 2 bytes)
+		final int word = (moves[i] & 0xFF) | (i + 1 < moves.length ? (moves[i + 1] & 0xFF) << 8 : 0);
+		return (word >>> (bit & 7)) & ((1 << TURN_BITS) - 1);
+	}
+
+	private static int movesBytes(final int turns) {
+		return (turns * TURN_BITS + 7) >> 3;
+	}
+
+	private static int varLongSize(long v) {
+		int n = 1;
+		while ((v >>>= 7) != 0)
+			++n;
+		return n;
+	}
+
+	private final long layoutId;
+	private final int turns;
+	/** The moves of each turn, 9 bits per turn in little-endian bit order */
+	private final byte[] moves;
+}
@@ -21,8 +21,9 @@ public class TonccRenderer extends JLayeredPane {
 		this.toncc = toncc;
 		
 		/* Here I prefer expliciting all components' bounds rather than using
-		 * a LayoutManager, since the cells have a fixed size, and creating
-		 * the correct layout with a LayoutManager would be difficult.
+		 * a LayoutManager, since the cells are laid on a hexagonal grid, and
+		 * creating the correct layout with a LayoutManager would be difficult.
+		 * The bounds are computed again by doLayout() whenever the size changes.
 		 */
 		final int[] ncells = { 3, 4, 5, 4, 3 };
 		int count = 0;
@@ -36,6 +37,8 @@ public class TonccRenderer extends JLayeredPane {
 			if(sizes[0] > 0)
 				cellSize = sizes[0];
 		}
+		baseCellSize = cellSize;
+		baseKingdomsCellSize = kingdomsCellSize;
 
 		for(int line = 0; line < 5; ++line) {
 			for(int i = 0; i < ncells[line]; ++i) {
@@ -52,25 +55,33 @@ public class TonccRenderer extends JLayeredPane {
 					else
 						cell = new TonccCellRenderer(toncc.getCell(count++));
 				}
-				int x = cellSize +
-					(line == 2 
-					? cellSize * i
-					: line % 2 == 0 
-						? cellSize * (i + 1)
-						: cellSize / 2 + cellSize * i),
-				    y = (line + 1) * cellSize,
-				    w = cellSize;
-				cell.setBounds(x, y, w, w);
 				cellRenderers.put(cell.getCell().id(), cell);
+				boardCells.add(cell);
 				add(cell, new Integer(1));
 			}
 		}
+		layoutBoard();
 
 		// create kingdoms occupation panel
 		kingdoms = new JPanel(true) {
 			@Override
 			public Dimension getPreferredSize() {
-				return new Dimension(kingdomsCellSize * 8, kingdomsCellSize * 8);
+				return new Dimension(baseKingdomsCellSize * 8, baseKingdomsCellSize * 8);
+			}
+
+			@Override
+			public Dimension getMinimumSize() {
+				return new Dimension(MIN_CELL_SIZE * 8, MIN_CELL_SIZE * 8);
+			}
+
+			@Override
+			public void doLayout() {
+				if (getWidth() == 0 || getHeight() == 0) return;
+				final int size = Math.max(MIN_CELL_SIZE, Math.min(getWidth(), getHeight()) / 8);
+				if (size == kingdomsCellSize) return;
+				kingdomsCellSize = size;
+				layoutKingdoms();
+				rescaleLater();
 			}
 		};
 		kingdoms.setLayout(null);
@@ -82,39 +93,47 @@ public class TonccRenderer extends JLayeredPane {
 		 */
 		count = 0;
 		// first line (a single cell)
-		TonccCellRenderer cell = new TonccCellRenderer(
-				new TonccCell(Toncc.MIND[count++]), kingdomsCellSize);
-		cell.setBounds(kingdomsCellSize * 3, 0, kingdomsCellSize, kingdomsCellSize);
-		kgCellRenderers.put(cell.getCell().id(), cell);
-		kingdoms.add(cell);
+		kingdomCells.add(new TonccCellRenderer(
+				new TonccCell(Toncc.MIND[count++]), kingdomsCellSize));
 		// mid lines (2 cells per line)
 		for(int line = 1; line < 6; ++line) {
 			for(int i = 0; i < 2; ++i) {
-				cell = 	new TonccCellRenderer(new TonccCell(
+				kingdomCells.add(new TonccCellRenderer(new TonccCell(
 						i == 0 
 							? Toncc.MIND[count] 
 							: Toncc.MIND[Toncc.TONCC_CELLS_NUM - count]),
-						kingdomsCellSize);
-				cell.setBounds((int)(kingdomsCellSize * (3 - line / 2. + line * i)), 
-						kingdomsCellSize * line,
-						kingdomsCellSize,
-						kingdomsCellSize);
-				kgCellRenderers.put(cell.getCell().id(), cell);
-				kingdoms.add(cell);			
+						kingdomsCellSize));
 				if(i == 1) ++count;
 			}
 		}
 		// last line (seven cells, not two)
 		for(int i = 0; i < 7; ++i) {
-			cell = new TonccCellRenderer(
-					new TonccCell(Toncc.MIND[count++]), kingdomsCellSize);
-			cell.setBounds(kingdomsCellSize * i, 
-					kingdomsCellSize * 6,
-					kingdomsCellSize,
-					kingdomsCellSize);
+			kingdomCells.add(new TonccCellRenderer(
+					new TonccCell(Toncc.MIND[count++]), kingdomsCellSize));
+		}
+		for (TonccCellRenderer cell : kingdomCells) {
 			kgCellRenderers.put(cell.getCell().id(), cell);
-			kingdoms.add(cell);			
+			kingdoms.add(cell);
+		}
+		layoutKingdoms();
+
+		rescaleTimer = new javax.swing.Timer(RESCALE_DELAY, e -> rescale());
+		rescaleTimer.setRepeats(false);
+	}
+
+	/** Shades the cells by the probability that each king captures them next turn
+	 * (see TonccHeatmap.compute()), or removes the shading if `heatmap` is null.
+	 * Must be called on the EDT.
+	 */
+	public void setHeatmap(final double[][] heatmap) {
+		if (heatmapRenderer == null) {
+			if (heatmap == null) return;
+			heatmapRenderer = new TonccHeatmapRenderer(cellRenderers);
+			heatmapRenderer.setBounds(0, 0, getWidth(), getHeight());
+			// Over the cells, under anything else
+			add(heatmapRenderer, Integer.valueOf(1), 0);
 		}
+		heatmapRenderer.setHeatmap(heatmap);
 	}
 
 	public final JPanel getKingdoms() { return kingdoms; }
@@ -123,7 +142,28 @@ public class TonccRenderer extends JLayeredPane {
 
 	@Override
 	public Dimension getPreferredSize() {
-		return new Dimension(cellSize * 6, cellSize * 8);
+		return new Dimension(baseCellSize * 6, baseCellSize * 8);
+	}
+
+	@Override
+	public Dimension getMinimumSize() {
+		return new Dimension(MIN_CELL_SIZE * 6, MIN_CELL_SIZE * 8);
+	}
+
+	/** Fits the table to the new size: the cells are moved and stretched at once, then
+	 * rescaled properly once the size has stopped changing for a moment.
+	 */
+	@Override
+	public void doLayout() {
+		if (getWidth() == 0 || getHeight() == 0) return;
+		if (heatmapRenderer != null)
+			heatmapRenderer.setBounds(0, 0, getWidth(), getHeight());
+		final int size = Math.max(MIN_CELL_SIZE, Math.min(getWidth() / 6, getHeight() / 8));
+		if (size == cellSize) return;
+		cellSize = size;
+		layoutBoard();
+		boardResized();
+		rescaleLater();
 	}
 
 	public static void main(String[] args) {
@@ -145,9 +185,99 @@ public class TonccRenderer extends JLayeredPane {
 		SwingConsole.run(frame, "Toncc Renderer");
 	}
 
+	/** Called on the EDT after the cells of the table have been moved to fit a new size */
+	protected void boardResized() {}
+
+	/** Called on the EDT when the images of the cells at the new size are ready */
+	protected void boardRescaled() {}
+
+	/////// PRIVATE METHODS AND FIELDS ///////
+
+	/** The smallest size of the cells, however small the window */
+	private final static int MIN_CELL_SIZE = 16;
+	/** Milliseconds without resizing before the images are rescaled */
+	private final static int RESCALE_DELAY = 200;
+	/** Rescales the images of the cells, off the EDT */
+	private final static java.util.concurrent.ExecutorService RESCALER =
+		java.util.concurrent.Executors.newSingleThreadExecutor(r -> {
+			final Thread t = new Thread(r, "TonccRescaler");
+			t.setDaemon(true);
+			return t;
+		});
+
+	/** Sets the bounds of the cells of the table for the current cellSize */
+	private void layoutBoard() {
+		final int[] ncells = { 3, 4, 5, 4, 3 };
+		int n = 0;
+		for(int line = 0; line < 5; ++line) {
+			for(int i = 0; i < ncells[line]; ++i) {
+				final TonccCellRenderer cell = boardCells.get(n++);
+				int x = cellSize +
+					(line == 2 
+					? cellSize * i
+					: line % 2 == 0 
+						? cellSize * (i + 1)
+						: cellSize / 2 + cellSize * i),
+				    y = (line + 1) * cellSize,
+				    w = cellSize;
+				cell.setBounds(x, y, w, w);
+				cell.setCellSize(cellSize == baseCellSize ? 0 : cellSize);
+			}
+		}
+	}
+
+	/** Sets the bounds of the cells of the kingdoms panel for the current kingdomsCellSize */
+	private void layoutKingdoms() {
+		final int kcs = kingdomsCellSize;
+		for (int n = 0; n < kingdomCells.size(); ++n) {
+			final TonccCellRenderer cell = kingdomCells.get(n);
+			if (n == 0) {
+				// first line (a single cell)
+				cell.setBounds(kcs * 3, 0, kcs, kcs);
+			} else if (n <= 10) {
+				// mid lines (2 cells per line)
+				final int line = (n + 1) / 2, i = (n + 1) % 2;
+				cell.setBounds((int)(kcs * (3 - line / 2. + line * i)), kcs * line, kcs, kcs);
+			} else {
+				// last line (seven cells)
+				cell.setBounds(kcs * (n - 11), kcs * 6, kcs, kcs);
+			}
+			cell.setCellSize(kcs == baseKingdomsCellSize ? 0 : kcs);
+		}
+	}
+
+	/** (Re)starts the countdown to rescale() */
+	private void rescaleLater() {
+		if (rescaleTimer != null)
+			rescaleTimer.restart();
+	}
+
+	/** Makes the images of all cells at their current sizes in the background, then repaints them */
+	private void rescale() {
+		final java.util.List<TonccCellRenderer> all = new ArrayList<>(boardCells);
+		all.addAll(kingdomCells);
+		RESCALER.execute(() -> {
+			for (TonccCellRenderer cell : all)
+				cell.prepare();
+			SwingUtilities.invokeLater(() -> {
+				repaint();
+				kingdoms.repaint();
+				boardRescaled();
+			});
+		});
+	}
+
 	protected Map<TonccCell.Id, TonccCellRenderer> cellRenderers = new HashMap<>();
 	protected Map<TonccCell.Id, TonccCellRenderer> kgCellRenderers = new HashMap<>();
 	protected int cellSize, kingdomsCellSize;
+	/** The sizes given at construction: the preferred size of the table and of the kingdoms panel */
+	protected final int baseCellSize, baseKingdomsCellSize;
 	protected final Toncc toncc;
 	protected final JPanel kingdoms;
+	/** Created by the first call to setHeatmap() */
+	private TonccHeatmapRenderer heatmapRenderer;
+	/** The cells of the table, line by line, and of the kingdoms panel, in the order they are laid out */
+	private final java.util.List<TonccCellRenderer> boardCells = new ArrayList<>(),
+	                                                kingdomCells = new ArrayList<>();
+	private final javax.swing.Timer rescaleTimer;
 }
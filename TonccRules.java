@@ -0,0 +1,115 @@
+package toncc;
+
+/** Precomputed tables for the scoring and the contest of cells, indexed
+ * by king ordinal and by MIND index of the cells (i.e. TonccCell.Id ordinal),
+ * so that resolving captures and computing scores never deals with strings.
+ *
+ * @license GNU GPL v3
+ * @author Giacomo Parolini
+ */
+public final class TonccRules {
+
+	/** { MIND index of a cell => ordinal of the king with the cell's color } */
+	public static final int[] CELL_COLOR = new int[Toncc.TONCC_CELLS_NUM];
+
+	/** { king => { color => points for each cell of that color in one of the king's kingdoms } }:
+	 * 1 point for its own color, 2 for its medium color and 3 for its weak color.
+	 */
+	public static final int[][] POINTS = new int[King.values().length][King.values().length];
+
+	/** { king => { other king => { MIND index of a cell => true if king prevails on other on the cell } } } */
+	public static final boolean[][][] PREVAILS =
+		new boolean[King.values().length][King.values().length][Toncc.TONCC_CELLS_NUM];
+
+	/** { king => { kingdom => points king gets for owning the kingdom } } */
+	public static final int[][] KINGDOM_POINTS = new int[King.values().length][Toncc.KINGDOMS_NUM];
+
+	static {
+		final King[] kings = King.values();
+		for (int cell = 0; cell < Toncc.TONCC_CELLS_NUM; ++cell) {
+			switch (Toncc.MIND[cell].name().charAt(0)) {
+			case 'R': CELL_COLOR[cell] = King.RED.ordinal(); break;
+			case 'B': CELL_COLOR[cell] = King.BLUE.ordinal(); break;
+			case 'Y': CELL_COLOR[cell] = King.YELLOW.ordinal(); break;
+			default: throw new AssertionError("Cell without a color: " + Toncc.MIND[cell]);
+			}
+		}
+		for (King king : kings) {
+			for (King color : kings) {
+				POINTS[king.ordinal()][color.ordinal()] = king == color ? 1
+					: king.getMediumColor() == color ? 2 : 3;
+			}
+			for (King other : kings) {
+				for (int cell = 0; cell < Toncc.TONCC_CELLS_NUM; ++cell) {
+					final King col = kings[CELL_COLOR[cell]];
+					PREVAILS[king.ordinal()][other.ordinal()][cell] = king == col ||
+						(king.getMediumColor() == col && other != col);
+				}
+			}
+			for (int k = 0; k < Toncc.KINGDOMS_NUM; ++k) {
+				for (int j = 0; j < 3; ++j) {
+					final int cell = (Toncc.KINGDOM_START[k] + j) % Toncc.TONCC_CELLS_NUM;
+					KINGDOM_POINTS[king.ordinal()][k] += points(king.ordinal(), cell);
+				}
+			}
+		}
+	}
+
+	private TonccRules() {}
+
+	/** @return the points `king` gets for the cell with MIND index `cell` when it's in one of its kingdoms */
+	public static int points(final int king, final int cell) {
+		return POINTS[king][CELL_COLOR[cell]];
+	}
+
+	/** @return true if `king` has a stronger color than `other` on the cell with MIND index `cell` */
+	public static boolean prevails(final int king, final int other, final int cell) {
+		return PREVAILS[king][other][cell];
+	}
+
+	/** @param kingdoms A bitmask of kingdoms, as given by Toncc.kingdoms()
+	 *  @return the points `king` gets from `kingdoms`
+	 */
+	public static int kingdomsScore(final int kingdoms, final int king) {
+		final int[] points = KINGDOM_POINTS[king];
+		int score = 0;
+		for (int mask = kingdoms; mask != 0; mask &= mask - 1)
+			score += points[Integer.numberOfTrailingZeros(mask)];
+		return score;
+	}
+
+	/** Running score update for a single capture.
+	 * @param owned The cells owned by `king` after capturing `cell` (see TonccState.ownerMask())
+	 * @return the points `king` gains by capturing the cell with MIND index `cell`
+	 */
+	public static int captureScore(final long owned, final int king, final int cell) {
+		// all the kingdoms containing `cell` which are now complete are new
+		return kingdomsScore(Toncc.completedKingdoms(owned, cell), king);
+	}
+
+	/** Resolves the contest among the kings standing on free cells: kings
+	 * are considered in order, and when a king reaches a cell already held
+	 * by another one, the one with the stronger color on the cell keeps it
+	 * (the first one in case of a tie).
+	 * @param red, blue, yellow The MIND index of the free cell each king is on, or -1
+	 * @return the bitmask of the kings capturing their cell (bit i for the i-th king)
+	 */
+	public static int contest(final int red, final int blue, final int yellow) {
+		int holders = red >= 0 ? 1 : 0;
+		if (blue >= 0) {
+			if (blue != red)
+				holders |= 2;
+			else if (PREVAILS[1][0][blue])
+				holders = 2;
+		}
+		if (yellow >= 0) {
+			final int other = (holders & 1) != 0 && red == yellow ? 0
+				: (holders & 2) != 0 && blue == yellow ? 1 : -1;
+			if (other < 0)
+				holders |= 4;
+			else if (PREVAILS[2][other][yellow])
+				holders = (holders & ~(1 << other)) | 4;
+		}
+		return holders;
+	}
+}
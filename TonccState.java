@@ -0,0 +1,244 @@
+package toncc;
+
+/** Static functions working on the state of a Toncc game packed into a
+ * single long, so that a position can be copied with a register move and
+ * stored by the million in a long[]. The layout of the bits is:
+ *
+ *  bits  0-35: the owner of each cell, 2 bits per cell indexed by its
+ *              position in Toncc.MIND (0 = free, 1 + king.ordinal() = owned);
+ *  bits 36-50: the index of each king's cell, 5 bits per king
+ *              (as given by TonccCoordinate.asCellIndex());
+ *  bits 51-59: each king's tokens, 3 bits per king; once a king is out
+ *              of the game this field holds its bonus points instead;
+ *  bits 60-62: each king's game over flag.
+ *
+ * The placement of the cells on the table (which doesn't change during a
+ * game) is not part of the state: it is given by Toncc.getLayout().
+ *
+ * @license GNU GPL v3
+ * @author Giacomo Parolini
+ */
+public final class TonccState {
+
+	public static final int KINGS_NUM = 3;
+	public static final int MIND_INDEX = TonccEngine.MIND_INDEX;
+
+	/** The lower bit of each cell's owner field: ownerMask() and freeMask() return subsets of this */
+	public static final long CELLS_MASK = 0x5_5555_5555L;
+	/** All the owner fields */
+	public static final long OWNERS_MASK = CELLS_MASK | (CELLS_MASK << 1);
+
+	static final int POSITION_SHIFT = 36;
+	static final int POSITION_BITS = 5;
+	static final int TOKENS_SHIFT = 51;
+	static final int TOKENS_BITS = 3;
+	static final int GAMEOVER_SHIFT = 60;
+	static final long GAMEOVER_MASK = 7L << GAMEOVER_SHIFT;
+
+	/** The state at the beginning of a game: all cells free, all kings on the MIND */
+	public static final long INITIAL;
+	static {
+		if (TonccEngine.INITIAL_TOKENS >= 1 << TOKENS_BITS)
+			throw new AssertionError("INITIAL_TOKENS doesn't fit in " + TOKENS_BITS + " bits");
+		long s = 0;
+		for (int k = 0; k < KINGS_NUM; ++k) {
+			s = withPosition(s, k, MIND_INDEX);
+			s = withTokens(s, k, TonccEngine.INITIAL_TOKENS);
+		}
+		INITIAL = s;
+	}
+
+	private TonccState() {}
+
+	/** @return 0 if the cell with MIND index `cell` is free, else 1 + its owner's ordinal */
+	public static int owner(final long s, final int cell) {
+		return (int)(s >>> (cell << 1)) & 3;
+	}
+
+	/** @return the owner of `id`, or null if it's free */
+	public static King getOwner(final long s, final TonccCell.Id id) {
+		final int o = owner(s, id.ordinal());
+		return o == 0 ? null : King.values()[o - 1];
+	}
+
+	public static long withOwner(final long s, final int cell, final int king) {
+		final int shift = cell << 1;
+		return (s & ~(3L << shift)) | ((long)(king + 1) << shift);
+	}
+
+	/** @return the cells owned by `king`, as bit 2*i for the i-th cell of the MIND */
+	public static long ownerMask(final long s, final int king) {
+		final long lo = s & CELLS_MASK, hi = (s >>> 1) & CELLS_MASK;
+		switch (king) {
+		case 0: return lo & ~hi;
+		case 1: return hi & ~lo;
+		default: return lo & hi;
+		}
+	}
+
+	/** @return the free cells, as bit 2*i for the i-th cell of the MIND */
+	public static long freeMask(final long s) {
+		return ~(s | (s >>> 1)) & CELLS_MASK;
+	}
+
+	/** @return the index of the cell where `king` is */
+	public static int position(final long s, final int king) {
+		return (int)(s >>> (POSITION_SHIFT + king * POSITION_BITS)) & ((1 << POSITION_BITS) - 1);
+	}
+
+	public static long withPosition(final long s, final int king, final int idx) {
+		final int shift = POSITION_SHIFT + king * POSITION_BITS;
+		return (s & ~((long)((1 << POSITION_BITS) - 1) << shift)) | ((long)idx << shift);
+	}
+
+	/** @return the tokens left to `king` (0 once it's out of the game) */
+	public static int tokens(final long s, final int king) {
+		return isGameOver(s, king) ? 0 : tokensField(s, king);
+	}
+
+	public static long withTokens(final long s, final int king, final int tokens) {
+		final int shift = TOKENS_SHIFT + king * TOKENS_BITS;
+		return (s & ~((long)((1 << TOKENS_BITS) - 1) << shift)) | ((long)tokens << shift);
+	}
+
+	/** @return the extra points `king` got when going out of the game (0 if it's still playing) */
+	public static int bonus(final long s, final int king) {
+		return isGameOver(s, king) ? tokensField(s, king) : 0;
+	}
+
+	public static boolean isGameOver(final long s, final int king) {
+		return (s & (1L << (GAMEOVER_SHIFT + king))) != 0;
+	}
+
+	/** @return true if all kings are out of the game */
+	public static boolean isOver(final long s) {
+		return (s & GAMEOVER_MASK) == GAMEOVER_MASK;
+	}
+
+	/** @return the number of kings still playing */
+	public static int activeKings(final long s) {
+		return KINGS_NUM - Long.bitCount(s & GAMEOVER_MASK);
+	}
+
+	/** Puts `king` out of the game with `bonus` extra points and places it back on the MIND */
+	public static long finish(final long s, final int king, final int bonus) {
+		return withPosition(withTokens(s, king, bonus), king, MIND_INDEX)
+			| (1L << (GAMEOVER_SHIFT + king));
+	}
+
+	/** @return the points `king` gets from its kingdoms, plus its bonus if it's out of the game */
+	public static int score(final long s, final int king) {
+		return TonccRules.kingdomsScore(Toncc.kingdoms(ownerMask(s, king)), king) + bonus(s, king);
+	}
+
+	/** The king with the highest score wins. If 2 kings have the same
+	 * score, the dominated one wins. A full draw only happens if all 3
+	 * kings have the same score.
+	 * @return the winner of a finished game, or null in case of a draw.
+	 */
+	public static King winner(final long s) {
+		final King[] kings = King.values();
+		final int[] scores = new int[KINGS_NUM];
+		int best = Integer.MIN_VALUE;
+		for (int k = 0; k < KINGS_NUM; ++k) {
+			scores[k] = score(s, k);
+			best = Math.max(best, scores[k]);
+		}
+		King first = null, second = null;
+		for (int k = 0; k < KINGS_NUM; ++k) {
+			if (scores[k] != best) continue;
+			if (first == null) {
+				first = kings[k];
+			} else if (second == null) {
+				second = kings[k];
+			} else {
+				return null;
+			}
+		}
+		if (second == null)
+			return first;
+		return first.dominates(second) ? second : first;
+	}
+
+	/** Resolves a whole turn: moves all kings which are still playing,
+	 * captures the cells, puts the kings without tokens out of the game
+	 * and, if only one king is left, assigns it all the remaining cells.
+	 * @param layout The placement of the cells, as given by Toncc.getLayout()
+	 * @param s The state before the turn
+	 * @param red, blue, yellow The index in Direction.HEX of each king's move
+	 *        (ignored for kings out of the game)
+	 * @return the state after the turn
+	 */
+	public static long applyTurn(final byte[] layout, final long s,
+			final int red, final int blue, final int yellow) {
+		long t = s;
+		if (!isGameOver(t, 0))
+			t = withPosition(t, 0, TonccCoordinate.step(position(t, 0), red));
+		if (!isGameOver(t, 1))
+			t = withPosition(t, 1, TonccCoordinate.step(position(t, 1), blue));
+		if (!isGameOver(t, 2))
+			t = withPosition(t, 2, TonccCoordinate.step(position(t, 2), yellow));
+		t = checkCaptures(layout, t);
+		return checkKingsGameOver(t);
+	}
+
+	/** @see #applyTurn(byte[], long, int, int, int) */
+	public static long applyTurn(final byte[] layout, final long s, final Direction... moves) {
+		final int[] dirs = new int[KINGS_NUM];
+		for (int k = 0; k < KINGS_NUM; ++k) {
+			if (isGameOver(s, k)) continue;
+			dirs[k] = moves[k].hexIndex();
+			if (dirs[k] < 0)
+				throw new IllegalArgumentException("Invalid direction: " + moves[k]);
+		}
+		return applyTurn(layout, s, dirs[0], dirs[1], dirs[2]);
+	}
+
+	/////// PRIVATE METHODS ///////
+
+	private static int tokensField(final long s, final int king) {
+		return (int)(s >>> (TOKENS_SHIFT + king * TOKENS_BITS)) & ((1 << TOKENS_BITS) - 1);
+	}
+
+	/** @return the MIND index of the free cell `king` is on, or -1 if it's on the MIND or on a captured cell */
+	private static int freeCell(final byte[] layout, final long t, final int king) {
+		final int idx = position(t, king);
+		if (idx == MIND_INDEX || owner(t, layout[idx]) != 0)
+			return -1;
+		return layout[idx];
+	}
+
+	private static long checkCaptures(final byte[] layout, long t) {
+		final int red = freeCell(layout, t, 0),
+		          blue = freeCell(layout, t, 1),
+		          yellow = freeCell(layout, t, 2);
+		final int holders = TonccRules.contest(red, blue, yellow);
+		if ((holders & 1) != 0)
+			t = withTokens(withOwner(t, red, 0), 0, tokensField(t, 0) - 1);
+		if ((holders & 2) != 0)
+			t = withTokens(withOwner(t, blue, 1), 1, tokensField(t, 1) - 1);
+		if ((holders & 4) != 0)
+			t = withTokens(withOwner(t, yellow, 2), 2, tokensField(t, 2) - 1);
+		return t;
+	}
+
+	private static long checkKingsGameOver(long t) {
+		// Each king going out of the game gets an extra point for each
+		// king (itself included) which was still playing
+		final int extra = activeKings(t);
+		for (int k = 0; k < KINGS_NUM; ++k) {
+			if (!isGameOver(t, k) && tokensField(t, k) == 0)
+				t = finish(t, k, extra);
+		}
+		if (activeKings(t) == 1) {
+			// Only 1 king is left: assign it all the remaining cells
+			int k = 0;
+			while (isGameOver(t, k))
+				++k;
+			final long free = freeMask(t);
+			t |= free * (k + 1);
+			t = finish(t, k, 1);
+		}
+		return t;
+	}
+}
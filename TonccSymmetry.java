@@ -0,0 +1,217 @@
+package toncc;
+
+import java.util.*;
+
+/** The symmetries of the Toncc: the rotations and reflections of the
+ * table which map every move onto a move (found by searching all the
+ * permutations of the directions, so the wrapping of the borders is taken
+ * into account), combined with the rotations of the colours which shift
+ * the MIND by 6 cells (RED -> BLUE -> YELLOW -> RED). Rotating the colours
+ * rotates the kings' seats as well: the king sitting on `seat` in a
+ * layout plays as the one sitting on rotateSeat(seat, r) in the layout
+ * transformed by a symmetry with colour rotation r.
+ *
+ * Layouts are reduced to a canonical form, the lexicographically smallest
+ * of their transformed layouts, so that only one layout in each class of
+ * equivalent ones needs to be analyzed.
+ *
+ * @license GNU GPL v3
+ * @author Giacomo Parolini
+ */
+public final class TonccSymmetry {
+
+	/** Number of rotations of the colours (and of the kings) */
+	public static final int COLOR_ROTATIONS = TonccState.KINGS_NUM;
+	/** MIND index shift of a rotation of the colours */
+	public static final int COLOR_SHIFT = Toncc.TONCC_CELLS_NUM / COLOR_ROTATIONS;
+
+	private TonccSymmetry() {}
+
+	/** @return the number of symmetries (board symmetries times colour rotations) */
+	public static int size() {
+		return CELL_PERMS.length * COLOR_ROTATIONS;
+	}
+
+	/** @return the number of symmetries of the table alone */
+	public static int boardSymmetries() {
+		return CELL_PERMS.length;
+	}
+
+	/** @return the image of cell index `idx` under the `sym`-th symmetry */
+	public static int cell(final int sym, final int idx) {
+		return CELL_PERMS[sym / COLOR_ROTATIONS][idx];
+	}
+
+	/** @return the image of the direction index `dir` under the `sym`-th symmetry */
+	public static int direction(final int sym, final int dir) {
+		return DIR_PERMS[sym / COLOR_ROTATIONS][dir];
+	}
+
+	/** @return the seat the king sitting on `seat` plays as under the `sym`-th symmetry */
+	public static int seat(final int sym, final int seat) {
+		return (seat + sym % COLOR_ROTATIONS) % COLOR_ROTATIONS;
+	}
+
+	/** @return the layout transformed by the `sym`-th symmetry, in `out` */
+	public static byte[] transform(final int sym, final byte[] layout, final byte[] out) {
+		final int[] perm = CELL_PERMS[sym / COLOR_ROTATIONS];
+		final int shift = (sym % COLOR_ROTATIONS) * COLOR_SHIFT;
+		for (int idx = 0; idx < layout.length; ++idx)
+			out[perm[idx]] = shiftColor(layout[idx], shift);
+		return out;
+	}
+
+	/** @return the canonical form of `layout` (a new array) */
+	public static byte[] canonical(final byte[] layout) {
+		final byte[] best = layout.clone(), cur = new byte[layout.length];
+		for (int sym = 1; sym < size(); ++sym) {
+			if (compare(transform(sym, layout, cur), best) < 0)
+				System.arraycopy(cur, 0, best, 0, cur.length);
+		}
+		return best;
+	}
+
+	/** @return the index of a symmetry transforming `layout` into its canonical form */
+	public static int canonicalSymmetry(final byte[] layout) {
+		final byte[] best = layout.clone(), cur = new byte[layout.length];
+		int bestSym = 0;
+		for (int sym = 1; sym < size(); ++sym) {
+			if (compare(transform(sym, layout, cur), best) < 0) {
+				System.arraycopy(cur, 0, best, 0, cur.length);
+				bestSym = sym;
+			}
+		}
+		return bestSym;
+	}
+
+	/** @return true if `layout` is the canonical form of its class */
+	public static boolean isCanonical(final byte[] layout, final byte[] scratch) {
+		for (int sym = 1; sym < size(); ++sym) {
+			if (compare(transform(sym, layout, scratch), layout) < 0)
+				return false;
+		}
+		return true;
+	}
+
+	/** @return the number of distinct layouts equivalent to `layout` (itself included) */
+	public static int orbitSize(final byte[] layout) {
+		final byte[] cur = new byte[layout.length];
+		int stabilizer = 0;
+		for (int sym = 0; sym < size(); ++sym) {
+			if (compare(transform(sym, layout, cur), layout) == 0)
+				++stabilizer;
+		}
+		return size() / stabilizer;
+	}
+
+	/////// PRIVATE METHODS AND FIELDS ///////
+
+	/** { board symmetry => { cell index => its image } } */
+	private static final int[][] CELL_PERMS;
+	/** { board symmetry => { direction index => its image } } */
+	private static final int[][] DIR_PERMS;
+
+	static {
+		final List<int[]> cells = new ArrayList<>(), dirs = new ArrayList<>();
+		final int[] q = { 0, 1, 2, 3, 4, 5 };
+		do {
+			final int[] p = cellPermutation(q);
+			if (p != null) {
+				cells.add(p);
+				dirs.add(q.clone());
+			}
+		} while (nextPermutation(q));
+		CELL_PERMS = cells.toArray(new int[0][]);
+		DIR_PERMS = dirs.toArray(new int[0][]);
+
+		// The colour rotations must preserve the kingdoms and the rules
+		for (int cell = 0; cell < Toncc.TONCC_CELLS_NUM; ++cell) {
+			final int img = (cell + COLOR_SHIFT) % Toncc.TONCC_CELLS_NUM;
+			if (TonccRules.CELL_COLOR[img] != (TonccRules.CELL_COLOR[cell] + 1) % COLOR_ROTATIONS)
+				throw new AssertionError("Colour rotation doesn't rotate the colour of " + Toncc.MIND[cell]);
+			if (Integer.bitCount(Toncc.CELL_KINGDOMS[cell]) != Integer.bitCount(Toncc.CELL_KINGDOMS[img]))
+				throw new AssertionError("Colour rotation doesn't preserve the kingdoms of " + Toncc.MIND[cell]);
+		}
+		for (int k = 0; k < Toncc.KINGDOMS_NUM; ++k) {
+			long img = 0;
+			for (long m = Toncc.KINGDOM_CELLS[k]; m != 0; m &= m - 1) {
+				final int cell = Long.numberOfTrailingZeros(m) >> 1;
+				img |= 1L << (((cell + COLOR_SHIFT) % Toncc.TONCC_CELLS_NUM) << 1);
+			}
+			boolean found = false;
+			for (long kingdom : Toncc.KINGDOM_CELLS)
+				found |= kingdom == img;
+			if (!found)
+				throw new AssertionError("Colour rotation doesn't preserve kingdom " + k);
+		}
+		for (King a : King.values()) {
+			for (King b : King.values()) {
+				final King ra = King.values()[(a.ordinal() + 1) % COLOR_ROTATIONS],
+				           rb = King.values()[(b.ordinal() + 1) % COLOR_ROTATIONS];
+				if (a.dominates(b) != ra.dominates(rb))
+					throw new AssertionError("Colour rotation doesn't preserve the dominance of " + a + " on " + b);
+			}
+		}
+	}
+
+	/** @return the permutation p of the cells such that moving from p(i) towards q(d) leads
+	 *  to p(step(i, d)) for all cells i and directions d, or null if there is none
+	 */
+	private static int[] cellPermutation(final int[] q) {
+		final int[] p = new int[TonccCoordinate.CELLS_NUM];
+		Arrays.fill(p, -1);
+		p[TonccState.MIND_INDEX] = TonccState.MIND_INDEX;
+		final Deque<Integer> queue = new ArrayDeque<>();
+		queue.add(TonccState.MIND_INDEX);
+		while (!queue.isEmpty()) {
+			final int i = queue.poll();
+			for (int d = 0; d < Direction.HEX_NUM; ++d) {
+				final int to = TonccCoordinate.step(i, d), img = TonccCoordinate.step(p[i], q[d]);
+				if (p[to] < 0) {
+					p[to] = img;
+					queue.add(to);
+				} else if (p[to] != img) {
+					return null;
+				}
+			}
+		}
+		// Must be a bijection, consistent on all moves
+		final boolean[] seen = new boolean[p.length];
+		for (int i = 0; i < p.length; ++i) {
+			if (p[i] < 0 || seen[p[i]]) return null;
+			seen[p[i]] = true;
+			for (int d = 0; d < Direction.HEX_NUM; ++d)
+				if (TonccCoordinate.step(p[i], q[d]) != p[TonccCoordinate.step(i, d)]) return null;
+		}
+		return p;
+	}
+
+	/** Rearranges `a` into the next permutation in lexicographic order.
+	 * @return false if `a` was the last one
+	 */
+	static boolean nextPermutation(final int[] a) {
+		int i = a.length - 2;
+		while (i >= 0 && a[i] >= a[i + 1])
+			--i;
+		if (i < 0) return false;
+		int j = a.length - 1;
+		while (a[j] <= a[i])
+			--j;
+		int t = a[i]; a[i] = a[j]; a[j] = t;
+		for (int l = i + 1, r = a.length - 1; l < r; ++l, --r) {
+			t = a[l]; a[l] = a[r]; a[r] = t;
+		}
+		return true;
+	}
+
+	private static byte shiftColor(final byte id, final int shift) {
+		return id == TonccCell.Id.MIND.ordinal() ? id
+			: (byte)((id + shift) % Toncc.TONCC_CELLS_NUM);
+	}
+
+	private static int compare(final byte[] a, final byte[] b) {
+		for (int i = 0; i < a.length; ++i)
+			if (a[i] != b[i]) return a[i] - b[i];
+		return 0;
+	}
+}
@@ -0,0 +1,344 @@
+package toncc;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/** Exact results of the endgame: positions where the kings still playing
+ * have at most a few tokens left, together with the best move of each king.
+ *
+ * As the kings move at the same time, the value stored for a king is
+ * the outcome (LOSS, DRAW or WIN) it can secure whatever the other kings
+ * do, i.e. the maximum over its moves of the worst outcome over the joint
+ * moves of the others. A king which can't force the game to end with an
+ * outcome (as the others may keep it wandering on captured cells forever)
+ * can't count on it. The best move of a king securing a DRAW or a WIN
+ * always makes progress towards its value, so following it never loops.
+ * A king which can't secure more than a LOSS has no best move (NO_MOVE):
+ * any move is as good as another in the worst case, and it's up to the
+ * player to choose one (e.g. by searching), lest the kings wander forever.
+ *
+ * Positions are identified by their Zobrist hash (see TonccZobrist), which
+ * includes the layout of the table. The file is made of a header, the
+ * sorted hashes of the positions and their entries, and it is mapped in
+ * memory read-only: probing it costs a binary search in the mapped pages.
+ *
+ * The tablebase is generated offline by main(), which solves all the
+ * positions reachable from the first endgame position of many games:
+ * either one game on each of many random layouts, or many games on the
+ * layouts given (e.g. the one about to be played with TonccGame -l), with
+ * some random moves so that they reach as many endgames as possible.
+ * There are far too many endgame positions on a layout to solve them all
+ * (the cells may be owned in about 4^18 ways), so a position may still
+ * be missing, in which case the players search as usual. Positions are
+ * not reduced by the symmetries of the table (see TonccSymmetry): each
+ * layout has its own positions.
+ *
+ * @license GNU GPL v3
+ * @author Giacomo Parolini
+ */
+public class TonccTablebase {
+
+	/** Outcomes of the game for a king */
+	public static final int LOSS = 0, DRAW = 1, WIN = 2;
+	/** The best move of a king which is out of the game, or which can't secure more than a LOSS */
+	public static final int NO_MOVE = 7;
+	/** Returned by probe() when a position is not in the tablebase */
+	public static final int MISSING = -1;
+
+	/** Maps the tablebase in `file` in memory */
+	public static TonccTablebase open(final Path file) throws IOException {
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			final long size = ch.size();
+			if (size < HEADER_BYTES || size > Integer.MAX_VALUE)
+				throw new IOException("Invalid tablebase size: " + size + " bytes");
+			final MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if (buf.getLong(0) != MAGIC)
+				throw new IOException("Not a Toncc tablebase: " + file);
+			final int maxTokens = buf.getInt(8);
+			final int count = buf.getInt(12);
+			if (size != HEADER_BYTES + count * (long)ENTRY_BYTES)
+				throw new IOException("Truncated tablebase: " + file);
+			buf.position(HEADER_BYTES);
+			final LongBuffer hashes = buf.slice().asLongBuffer();
+			buf.position(HEADER_BYTES + count * 8);
+			final ShortBuffer entries = buf.slice().asShortBuffer();
+			return new TonccTablebase(maxTokens, count, hashes, entries);
+		}
+	}
+
+	/** @return the entry of the position with Zobrist hash `hash`, or MISSING */
+	public int probe(final long hash) {
+		int lo = 0, hi = count - 1;
+		while (lo <= hi) {
+			final int mid = (lo + hi) >>> 1;
+			final long h = hashes.get(mid);
+			if (h < hash)
+				lo = mid + 1;
+			else if (h > hash)
+				hi = mid - 1;
+			else
+				return entries.get(mid) & 0xFFFF;
+		}
+		return MISSING;
+	}
+
+	/** @return the entry of the given position, or MISSING */
+	public int probe(final byte[] layout, final long state) {
+		if (!isEndgame(state, maxTokens))
+			return MISSING;
+		return probe(TonccZobrist.hash(layout, state));
+	}
+
+	/** @return the outcome `king` can secure in the position of `entry` */
+	public static int value(final int entry, final int king) {
+		return (entry >>> (king * KING_BITS)) & 3;
+	}
+
+	/** @return the index in Direction.HEX of the best move of `king`, or NO_MOVE if it has none */
+	public static int move(final int entry, final int king) {
+		return (entry >>> (king * KING_BITS + 2)) & 7;
+	}
+
+	/** @return a policy playing the best move of the tablebase when it knows the position and
+	 *  the king has one, else `fallback`'s
+	 */
+	public TonccPolicy asPolicy(final TonccPolicy fallback) {
+		return (layout, state, king, rng) -> {
+			final int entry = probe(layout, state);
+			final int move = entry == MISSING ? NO_MOVE : move(entry, king);
+			return move == NO_MOVE ? fallback.selectMove(layout, state, king, rng) : move;
+		};
+	}
+
+	/** @return the maximum number of tokens left to all the kings in the positions of the tablebase */
+	public int getMaxTokens() { return maxTokens; }
+	/** @return the number of positions in the tablebase */
+	public int size() { return count; }
+
+	/** @return true if the game isn't over and the kings still playing have at most `maxTokens` tokens in all */
+	public static boolean isEndgame(final long state, final int maxTokens) {
+		if (TonccState.isOver(state))
+			return false;
+		int tokens = 0;
+		for (int k = 0; k < TonccState.KINGS_NUM; ++k)
+			tokens += TonccState.tokens(state, k);
+		return tokens <= maxTokens;
+	}
+
+	/** Solves all the positions reachable from `root` and adds the non-final ones to `solved`
+	 * { Zobrist hash => entry }.
+	 */
+	public static void solve(final byte[] layout, final long root, final Map<Long, Short> solved) {
+		// Find all the positions reachable from root
+		final Map<Long, Integer> index = new HashMap<>();
+		long[] states = new long[1024];
+		int n = 0;
+		index.put(root, n);
+		states[n++] = root;
+		int[] succ = new int[1024 * JOINT_MOVES];
+		for (int i = 0; i < n; ++i) {
+			final long s = states[i];
+			if (TonccState.isOver(s)) continue;
+			for (int j = 0; j < JOINT_MOVES; ++j) {
+				final long t = TonccState.applyTurn(layout, s, j / 36, j / 6 % 6, j % 6);
+				Integer idx = index.get(t);
+				if (idx == null) {
+					if (n == states.length) {
+						states = Arrays.copyOf(states, n * 2);
+						succ = Arrays.copyOf(succ, n * 2 * JOINT_MOVES);
+					}
+					idx = n;
+					index.put(t, n);
+					states[n++] = t;
+				}
+				succ[i * JOINT_MOVES + j] = idx;
+			}
+		}
+
+		// Values start from LOSS and only grow until they reach the least fixed point
+		final byte[] values = new byte[n * TonccState.KINGS_NUM];
+		final byte[] moves = new byte[n * TonccState.KINGS_NUM];
+		for (int i = 0; i < n; ++i) {
+			if (!TonccState.isOver(states[i])) continue;
+			final King winner = TonccState.winner(states[i]);
+			for (int k = 0; k < TonccState.KINGS_NUM; ++k)
+				values[i * TonccState.KINGS_NUM + k] = (byte)(winner == null ? DRAW
+						: winner.ordinal() == k ? WIN : LOSS);
+		}
+		// A king gets a move only when it secures more than a LOSS
+		Arrays.fill(moves, (byte)NO_MOVE);
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			// (positions found later are mostly closer to the end)
+			for (int i = n - 1; i >= 0; --i) {
+				if (TonccState.isOver(states[i])) continue;
+				for (int k = 0; k < TonccState.KINGS_NUM; ++k) {
+					final int v = i * TonccState.KINGS_NUM + k;
+					if (TonccState.isGameOver(states[i], k)) {
+						final int o = worstOutcome(succ, values, i, k, -1);
+						if (o > values[v]) {
+							values[v] = (byte)o;
+							changed = true;
+						}
+						continue;
+					}
+					for (int a = 0; a < Direction.HEX_NUM; ++a) {
+						final int o = worstOutcome(succ, values, i, k, a);
+						// The move is only replaced by one securing more, so it always makes progress
+						if (o > values[v]) {
+							values[v] = (byte)o;
+							moves[v] = (byte)a;
+							changed = true;
+						}
+					}
+				}
+			}
+		}
+
+		for (int i = 0; i < n; ++i) {
+			if (TonccState.isOver(states[i])) continue;
+			int entry = 0;
+			for (int k = 0; k < TonccState.KINGS_NUM; ++k) {
+				final int v = i * TonccState.KINGS_NUM + k;
+				entry |= (values[v] | (moves[v] << 2)) << (k * KING_BITS);
+			}
+			solved.put(TonccZobrist.hash(layout, states[i]), (short)entry);
+		}
+	}
+
+	/** Writes the positions in `solved` { Zobrist hash => entry } to `file` */
+	public static void write(final Path file, final int maxTokens, final Map<Long, Short> solved)
+			throws IOException {
+		final long[] hashes = new long[solved.size()];
+		int n = 0;
+		for (long h : solved.keySet())
+			hashes[n++] = h;
+		Arrays.sort(hashes);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				Files.newOutputStream(file), 1 << 16))) {
+			out.writeLong(MAGIC);
+			out.writeInt(maxTokens);
+			out.writeInt(n);
+			for (long h : hashes)
+				out.writeLong(h);
+			for (long h : hashes)
+				out.writeShort(solved.get(h));
+		}
+	}
+
+	/** Generates a tablebase from the endgames of `-n` games: between greedy kings on random
+	 * layouts, or between mostly greedy kings on each layout given with `-l`
+	 */
+	public static void main(String[] args) throws IOException {
+		long games = 1000;
+		long seed = System.nanoTime();
+		int maxTokens = 4;
+		Path file = Paths.get("toncc.tb");
+		final List<byte[]> layouts = new ArrayList<>();
+
+		for (int i = 0; i < args.length; ++i) {
+			switch (args[i]) {
+			case "-h":
+			case "--help":
+				System.err.println("Usage: TonccTablebase [-n games] [-s seed] [-T max_tokens] [-o file] "
+						+ "[-l layout_id]...\n"
+						+ "With -l, plays `games` games on each layout given instead of one game "
+						+ "on each of `games` random layouts.");
+				return;
+			case "-n":
+				games = Long.parseLong(args[++i]);
+				break;
+			case "-s":
+				seed = Long.parseLong(args[++i]);
+				break;
+			case "-T":
+				maxTokens = Integer.parseInt(args[++i]);
+				break;
+			case "-o":
+				file = Paths.get(args[++i]);
+				break;
+			case "-l":
+				layouts.add(Toncc.fromId(Toncc.parseId(args[++i])).getLayout());
+				break;
+			}
+		}
+
+		final long total = layouts.isEmpty() ? games : games * layouts.size();
+		System.err.println("Solving the endgames of " + total + " games with at most " + maxTokens
+				+ " tokens left (seed = " + seed + ")");
+		final long start = System.nanoTime();
+		final SplittableRandom rng = new SplittableRandom(seed);
+		final Map<Long, Short> solved = new HashMap<>();
+		// On the given layouts, some random moves lead the games to different endgames
+		final double randomMoves = layouts.isEmpty() ? 0 : EXPLORATION;
+		for (long g = 0; g < total; ++g) {
+			final byte[] layout = layouts.isEmpty()
+				? new Toncc(rng).getLayout()
+				: layouts.get((int)(g % layouts.size()));
+			long state = TonccState.INITIAL;
+			for (int turn = 0; turn < TonccTournament.MAX_TURNS && !TonccState.isOver(state); ++turn) {
+				if (isEndgame(state, maxTokens)) {
+					if (!solved.containsKey(TonccZobrist.hash(layout, state)))
+						solve(layout, state, solved);
+					break;
+				}
+				final int[] m = new int[TonccState.KINGS_NUM];
+				for (int k = 0; k < TonccState.KINGS_NUM; ++k)
+					m[k] = TonccState.isGameOver(state, k) ? 0
+						: rng.nextDouble() < randomMoves ? TonccPolicy.RANDOM.selectMove(layout, state, k, rng)
+						: TonccPolicy.GREEDY.selectMove(layout, state, k, rng);
+				state = TonccState.applyTurn(layout, state, m[0], m[1], m[2]);
+			}
+		}
+		write(file, maxTokens, solved);
+		System.err.println(String.format("Wrote %d positions to %s in %.2f s",
+				solved.size(), file, (System.nanoTime() - start) / 1e9));
+	}
+
+	/////// PRIVATE METHODS AND FIELDS ///////
+
+	// (version 1 stored move 0 for the kings which could only secure a LOSS)
+	private static final long MAGIC = 0x546F6E6363544232L; // "TonccTB2"
+	private static final int HEADER_BYTES = 16;
+	/** A hash and an entry */
+	private static final int ENTRY_BYTES = 8 + 2;
+	/** Bits of an entry for each king: 2 for the value, 3 for the move */
+	private static final int KING_BITS = 5;
+	private static final int JOINT_MOVES = Direction.HEX_NUM * Direction.HEX_NUM * Direction.HEX_NUM;
+	/** Chance of a random move in the games played on the layouts given to main() */
+	private static final double EXPLORATION = 0.25;
+
+	private TonccTablebase(final int maxTokens, final int count,
+			final LongBuffer hashes, final ShortBuffer entries) {
+		this.maxTokens = maxTokens;
+		this.count = count;
+		this.hashes = hashes;
+		this.entries = entries;
+	}
+
+	/** @return the worst outcome for `king` at the `i`-th position over the
+	 *  successors where it plays `move` (or over all of them if `move` < 0)
+	 */
+	private static int worstOutcome(final int[] succ, final byte[] values,
+			final int i, final int king, final int move) {
+		int worst = WIN;
+		for (int j = 0; j < JOINT_MOVES; ++j) {
+			if (move >= 0 && TonccMcts.jointMove(j, king) != move) continue;
+			final int o = values[succ[i * JOINT_MOVES + j] * TonccState.KINGS_NUM + king];
+			if (o < worst) {
+				worst = o;
+				if (worst == LOSS) break;
+			}
+		}
+		return worst;
+	}
+
+	private final int maxTokens;
+	private final int count;
+	private final LongBuffer hashes;
+	private final ShortBuffer entries;
+}
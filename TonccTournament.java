@@ -0,0 +1,248 @@
+package toncc;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Plays many complete games between three TonccPolicy's on all cores,
+ * without any graphics. Games are split among fork-join tasks, each
+ * one with its own SplittableRandom (split from its parent's), which
+ * shuffles the tables and feeds the policies: the results only depend
+ * on the seed, not on the number of threads.
+ *
+ * @license GNU GPL v3
+ * @author Giacomo Parolini
+ */
+public class TonccTournament {
+
+	/** Games lasting longer than this are aborted (a policy may never capture anything) */
+	public static final int MAX_TURNS = 1000;
+
+	/** Aggregated results of a tournament, updated concurrently by all workers */
+	public static class Result {
+		public final LongAdder[] wins = new LongAdder[TonccState.KINGS_NUM];
+		public final LongAdder[] scores = new LongAdder[TonccState.KINGS_NUM];
+		public final LongAdder draws = new LongAdder();
+		public final LongAdder aborted = new LongAdder();
+		public final LongAdder turns = new LongAdder();
+
+		Result() {
+			for (int k = 0; k < TonccState.KINGS_NUM; ++k) {
+				wins[k] = new LongAdder();
+				scores[k] = new LongAdder();
+			}
+		}
+
+		/** @return the number of games played (finished or not) */
+		public long getGames() {
+			long n = draws.sum() + aborted.sum();
+			for (LongAdder w : wins)
+				n += w.sum();
+			return n;
+		}
+
+		@Override
+		public String toString() {
+			final long games = getGames();
+			final long finished = games - aborted.sum();
+			final StringBuilder sb = new StringBuilder();
+			for (King king : King.values()) {
+				final int k = king.ordinal();
+				sb.append(String.format("%-6s wins: %6.2f%%  avg score: %.2f%n", king.getColorString(),
+					games == 0 ? 0. : 100. * wins[k].sum() / games,
+					finished == 0 ? 0. : (double)scores[k].sum() / finished));
+			}
+			sb.append(String.format("Draws: %.2f%%  Aborted: %d  Avg turns: %.2f",
+				games == 0 ? 0. : 100. * draws.sum() / games, aborted.sum(),
+				games == 0 ? 0. : (double)turns.sum() / games));
+			return sb.toString();
+		}
+	}
+
+	/** @param policies The policy of each king (red, blue, yellow) */
+	public TonccTournament(final TonccPolicy... policies) {
+		if (policies.length != TonccState.KINGS_NUM)
+			throw new IllegalArgumentException("Expected " + TonccState.KINGS_NUM + " policies");
+		this.policies = policies.clone();
+	}
+
+	/** Plays `games` games with `threads` worker threads.
+	 * @return the results, which only depend on `games` and `seed`
+	 */
+	public Result play(final long games, final long seed, final int threads) {
+		final Result result = new Result();
+		final ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			pool.invoke(new Games(0, games, new SplittableRandom(seed), result));
+		} finally {
+			pool.shutdown();
+		}
+		return result;
+	}
+
+	/** Plays a single game from the beginning, adding its outcome to `result`. */
+	public void playGame(final SplittableRandom rng, final Result result) {
+		playGame(new Toncc(rng).getLayout(), rng, result);
+	}
+
+	/** Plays a single game on the table with the given layout, adding its outcome to `result`. */
+	public void playGame(final byte[] layout, final SplittableRandom rng, final Result result) {
+		final TonccRecord.Writer recorder = this.recorder;
+		final TonccRecord.Builder record = recorder == null ? null : new TonccRecord.Builder(Toncc.rank(layout));
+		long state = TonccState.INITIAL;
+		int turns = 0;
+		while (!TonccState.isOver(state)) {
+			if (turns == MAX_TURNS) {
+				result.aborted.increment();
+				result.turns.add(turns);
+				record(recorder, record);
+				return;
+			}
+			final int red = TonccState.isGameOver(state, 0) ? 0
+				: policies[0].selectMove(layout, state, 0, rng);
+			final int blue = TonccState.isGameOver(state, 1) ? 0
+				: policies[1].selectMove(layout, state, 1, rng);
+			final int yellow = TonccState.isGameOver(state, 2) ? 0
+				: policies[2].selectMove(layout, state, 2, rng);
+			if (record != null) {
+				record.add(TonccState.isGameOver(state, 0) ? TonccRecord.NO_MOVE : red,
+						TonccState.isGameOver(state, 1) ? TonccRecord.NO_MOVE : blue,
+						TonccState.isGameOver(state, 2) ? TonccRecord.NO_MOVE : yellow);
+			}
+			state = TonccState.applyTurn(layout, state, red, blue, yellow);
+			++turns;
+		}
+		record(recorder, record);
+		result.turns.add(turns);
+		for (int k = 0; k < TonccState.KINGS_NUM; ++k)
+			result.scores[k].add(TonccState.score(state, k));
+		final King winner = TonccState.winner(state);
+		if (winner == null)
+			result.draws.increment();
+		else
+			result.wins[winner.ordinal()].increment();
+	}
+
+	/** Records all the games played from now on with `recorder` (null to stop recording) */
+	public void setRecorder(final TonccRecord.Writer recorder) {
+		this.recorder = recorder;
+	}
+
+	public static void main(String[] args) throws IOException {
+		long games = 1_000_000;
+		long seed = System.nanoTime();
+		int threads = Runtime.getRuntime().availableProcessors();
+		final TonccPolicy[] policies = { TonccPolicy.RANDOM, TonccPolicy.RANDOM, TonccPolicy.RANDOM };
+		Path recordFile = null;
+
+		for (int i = 0; i < args.length; ++i) {
+			final String arg = args[i];
+			switch (arg) {
+			case "-h":
+			case "--help":
+				System.err.println("Usage: TonccTournament [-n games] [-s seed] [-t threads] "
+						+ "[-p red_policy,blue_policy,yellow_policy] [-r record_file]\n"
+						+ "Policies: " + String.join(", ", POLICIES.keySet()));
+				return;
+			case "-n":
+				games = Long.parseLong(args[++i]);
+				break;
+			case "-s":
+				seed = Long.parseLong(args[++i]);
+				break;
+			case "-t":
+				threads = Integer.parseInt(args[++i]);
+				break;
+			case "-p":
+				{
+					final String[] names = args[++i].split(",");
+					for (int k = 0; k < policies.length && k < names.length; ++k) {
+						policies[k] = POLICIES.get(names[k]);
+						if (policies[k] == null) {
+							System.err.println("Unknown policy: " + names[k]);
+							return;
+						}
+					}
+					break;
+				}
+			case "-r":
+				recordFile = Paths.get(args[++i]);
+				break;
+			}
+		}
+
+		System.err.println("Playing " + games + " games on " + threads + " threads (seed = " + seed + ")");
+		final long start = System.nanoTime();
+		final TonccTournament tournament = new TonccTournament(policies);
+		final Result result;
+		if (recordFile != null) {
+			try (TonccRecord.Writer recorder = TonccRecord.Writer.append(recordFile)) {
+				tournament.setRecorder(recorder);
+				result = tournament.play(games, seed, threads);
+			}
+		} else {
+			result = tournament.play(games, seed, threads);
+		}
+		final double elapsed = (System.nanoTime() - start) / 1e9;
+		System.out.println(result);
+		System.out.println(String.format("%.2f s, %.0f games/s, %.0f turns/s",
+				elapsed, games / elapsed, result.turns.sum() / elapsed));
+	}
+
+	/////// PRIVATE METHODS AND FIELDS ///////
+
+	/** Below this number of games a task plays its games instead of forking */
+	private static final long GAMES_PER_TASK = 1024;
+
+	/** Iterations per move of the "cfr" policy */
+	private static final long CFR_ITERATIONS = 32;
+
+	/** The policies selectable from the command line */
+	static final Map<String, TonccPolicy> POLICIES = new LinkedHashMap<>();
+	static {
+		POLICIES.put("random", TonccPolicy.RANDOM);
+		POLICIES.put("greedy", TonccPolicy.GREEDY);
+		POLICIES.put("cfr", TonccCfr.policy(CFR_ITERATIONS));
+	}
+
+	private static void record(final TonccRecord.Writer recorder, final TonccRecord.Builder record) {
+		if (record == null) return;
+		try {
+			recorder.write(record.build());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/** Plays the games in [from, to), splitting the range (and the random generator) in halves */
+	private class Games extends RecursiveAction {
+		Games(final long from, final long to, final SplittableRandom rng, final Result result) {
+			this.from = from;
+			this.to = to;
+			this.rng = rng;
+			this.result = result;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= GAMES_PER_TASK) {
+				for (long i = from; i < to; ++i)
+					playGame(rng, result);
+				return;
+			}
+			final long mid = (from + to) >>> 1;
+			final Games left = new Games(from, mid, rng.split(), result);
+			final Games right = new Games(mid, to, rng, result);
+			invokeAll(left, right);
+		}
+
+		private final long from, to;
+		private final SplittableRandom rng;
+		private final Result result;
+	}
+
+	private final TonccPolicy[] policies;
+	private volatile TonccRecord.Writer recorder;
+}
@@ -0,0 +1,150 @@
+package toncc;
+
+import java.nio.*;
+
+/** A fixed-size hash table of search results, keyed by Zobrist hash
+ * (see TonccZobrist), which many search threads can probe and store into
+ * at once without any lock.
+ *
+ * The entries live off-heap, in direct buffers, so a large table doesn't
+ * weigh on the garbage collector. Entries are grouped in buckets of
+ * BUCKET_ENTRIES entries (a cache line); each entry is a pair of longs
+ * (key ^ data, data). A reader only accepts an entry whose first word,
+ * xor'ed with the second, gives back the key it looks for: an entry torn
+ * by concurrent writers fails this check and is just seen as a miss.
+ *
+ * Data is a long packing the value of the position (as a float), the
+ * weight of that value (e.g. the depth or number of visits of the search
+ * which produced it), the best move and the generation of the search.
+ *
+ * @license GNU GPL v3
+ * @author Giacomo Parolini
+ */
+public class TonccTranspositionTable {
+
+	/** Number of entries in a bucket */
+	public static final int BUCKET_ENTRIES = 4;
+	/** Returned by probe() when the hash is not in the table (no data ever equals it) */
+	public static final long MISSING = 0;
+	public static final int MAX_WEIGHT = 0xFFFF;
+
+	/** Allocates a table using at most `bytes` bytes (rounded down to a power of 2 buckets) */
+	public TonccTranspositionTable(final long bytes) {
+		if (bytes < BUCKET_BYTES)
+			throw new IllegalArgumentException("Transposition table too small: " + bytes + " bytes");
+		final long buckets = Long.highestOneBit(bytes / BUCKET_BYTES);
+		bucketMask = buckets - 1;
+		final long segmentBuckets = Math.min(buckets, SEGMENT_BYTES / BUCKET_BYTES);
+		segmentShift = Long.numberOfTrailingZeros(segmentBuckets);
+		segments = new ByteBuffer[(int)(buckets / segmentBuckets)];
+		for (int i = 0; i < segments.length; ++i)
+			segments[i] = ByteBuffer.allocateDirect((int)(segmentBuckets * BUCKET_BYTES))
+				.order(ByteOrder.nativeOrder());
+	}
+
+	/** @return the data stored for `hash`, or MISSING */
+	public long probe(final long hash) {
+		final ByteBuffer seg = segment(hash);
+		final int base = offset(hash);
+		for (int i = 0; i < BUCKET_ENTRIES; ++i) {
+			final int off = base + i * ENTRY_BYTES;
+			final long data = seg.getLong(off + 8);
+			if ((seg.getLong(off) ^ data) == hash && data != MISSING)
+				return data;
+		}
+		return MISSING;
+	}
+
+	/** Stores a result for `hash` in the current generation: it replaces
+	 * the entry with the same hash, else an empty entry, else the entry of
+	 * the oldest generation with the lowest weight.
+	 * @param value The value of the position
+	 * @param weight How much `value` can be trusted, in [0, MAX_WEIGHT]
+	 * @param move The index in Direction.HEX of the best move (or any byte)
+	 */
+	public void store(final long hash, final float value, final int weight, final int move) {
+		final long data = pack(value, Math.min(weight, MAX_WEIGHT), move, generation);
+		final ByteBuffer seg = segment(hash);
+		final int base = offset(hash);
+		int victim = base;
+		int victimScore = Integer.MAX_VALUE;
+		for (int i = 0; i < BUCKET_ENTRIES; ++i) {
+			final int off = base + i * ENTRY_BYTES;
+			final long old = seg.getLong(off + 8);
+			if (old == MISSING || (seg.getLong(off) ^ old) == hash) {
+				victim = off;
+				break;
+			}
+			// Entries of older searches are replaced first
+			final int age = (generation - generation(old)) & 0xFF;
+			final int score = weight(old) - age * (MAX_WEIGHT + 1);
+			if (score < victimScore) {
+				victim = off;
+				victimScore = score;
+			}
+		}
+		seg.putLong(victim, hash ^ data);
+		seg.putLong(victim + 8, data);
+	}
+
+	/** Starts a new generation: entries stored from now on will be preferred to the older ones */
+	public void newSearch() {
+		generation = generation == 0xFF ? 1 : generation + 1;
+	}
+
+	/** Empties the table. Must not be called while other threads use it. */
+	public void clear() {
+		for (ByteBuffer seg : segments) {
+			for (int off = 0; off < seg.capacity(); off += 8)
+				seg.putLong(off, 0);
+		}
+	}
+
+	/** @return the number of entries in the table */
+	public long capacity() {
+		return (bucketMask + 1) * BUCKET_ENTRIES;
+	}
+
+	public static float value(final long data) {
+		return Float.intBitsToFloat((int)(data >>> 32));
+	}
+
+	public static int weight(final long data) {
+		return (int)(data >>> 16) & 0xFFFF;
+	}
+
+	public static int move(final long data) {
+		return (int)(data >>> 8) & 0xFF;
+	}
+
+	/////// PRIVATE METHODS AND FIELDS ///////
+
+	private static final int ENTRY_BYTES = 16;
+	private static final int BUCKET_BYTES = BUCKET_ENTRIES * ENTRY_BYTES;
+	/** Maximum size of a single direct buffer */
+	private static final long SEGMENT_BYTES = 1L << 30;
+
+	/** The generation is never 0, so no data is ever MISSING */
+	private static long pack(final float value, final int weight, final int move, final int generation) {
+		return ((long)Float.floatToRawIntBits(value) << 32) | ((long)weight << 16)
+			| ((move & 0xFF) << 8) | generation;
+	}
+
+	private static int generation(final long data) {
+		return (int)data & 0xFF;
+	}
+
+	private ByteBuffer segment(final long hash) {
+		return segments[(int)((hash & bucketMask) >>> segmentShift)];
+	}
+
+	/** @return the offset of the bucket of `hash` in its segment */
+	private int offset(final long hash) {
+		return (int)(hash & bucketMask & ((1L << segmentShift) - 1)) * BUCKET_BYTES;
+	}
+
+	private final ByteBuffer[] segments;
+	private final long bucketMask;
+	private final int segmentShift;
+	private volatile int generation = 1;
+}
@@ -0,0 +1,102 @@
+package toncc;
+
+import java.util.SplittableRandom;
+
+/** Zobrist hashing of Toncc positions: a position (the layout of the
+ * cells plus a packed TonccState) is identified by the XOR of a random
+ * 64-bit key for each (field, value) pair, where the fields are the
+ * TonccCell.Id on each cell of the table, the owner of each cell, the
+ * cell of each king, its tokens and its game over flag.
+ * The keys are generated from a fixed seed, so hashes can be persisted.
+ *
+ * @license GNU GPL v3
+ * @author Giacomo Parolini
+ */
+public final class TonccZobrist {
+
+	private TonccZobrist() {}
+
+	/** @return the hash of the placement of the cells, as given by Toncc.getLayout() */
+	public static long hashLayout(final byte[] layout) {
+		long h = 0;
+		for (int idx = 0; idx < layout.length; ++idx)
+			h ^= LAYOUT_KEYS[idx * ID_VALUES + layout[idx]];
+		return h;
+	}
+
+	/** @return the hash of the packed state `s` alone */
+	public static long hashState(final long s) {
+		long h = 0;
+		for (int f = 0; f < FIELDS_NUM; ++f)
+			h ^= key(f, s);
+		return h;
+	}
+
+	/** @return the hash of the position given by `layout` and state `s` */
+	public static long hash(final byte[] layout, final long s) {
+		return hashLayout(layout) ^ hashState(s);
+	}
+
+	/** Incrementally updates `hash` when the state changes from `prev` to
+	 * `next`, in time proportional to the number of fields which changed
+	 * (a captured cell, a moved king...).
+	 * @return the hash of the position with state `next`
+	 */
+	public static long update(long hash, final long prev, final long next) {
+		for (long diff = prev ^ next; diff != 0; ) {
+			final int f = FIELD_OF_BIT[Long.numberOfTrailingZeros(diff)];
+			hash ^= key(f, prev) ^ key(f, next);
+			diff &= ~(FIELD_MASK[f] << FIELD_SHIFT[f]);
+		}
+		return hash;
+	}
+
+	/////// PRIVATE METHODS AND FIELDS ///////
+
+	private static final int ID_VALUES = TonccCell.Id.values().length;
+	private static final int FIELDS_NUM = Toncc.TONCC_CELLS_NUM + 3 * TonccState.KINGS_NUM;
+	/** The first bit of each field of the state */
+	private static final int[] FIELD_SHIFT = new int[FIELDS_NUM];
+	/** The mask of each field of the state (once shifted down) */
+	private static final long[] FIELD_MASK = new long[FIELDS_NUM];
+	/** The offset of each field's keys in FIELD_KEYS */
+	private static final int[] FIELD_OFFSET = new int[FIELDS_NUM];
+	/** { bit of the state => field containing it } */
+	private static final int[] FIELD_OF_BIT = new int[Long.SIZE];
+	private static final long[] FIELD_KEYS;
+	/** { cell index * ID_VALUES + id ordinal => key } */
+	private static final long[] LAYOUT_KEYS = new long[TonccCoordinate.CELLS_NUM * ID_VALUES];
+
+	static {
+		int f = 0;
+		for (int cell = 0; cell < Toncc.TONCC_CELLS_NUM; ++cell)
+			addField(f++, cell << 1, 2);
+		for (int k = 0; k < TonccState.KINGS_NUM; ++k) {
+			addField(f++, TonccState.POSITION_SHIFT + k * TonccState.POSITION_BITS, TonccState.POSITION_BITS);
+			addField(f++, TonccState.TOKENS_SHIFT + k * TonccState.TOKENS_BITS, TonccState.TOKENS_BITS);
+			addField(f++, TonccState.GAMEOVER_SHIFT + k, 1);
+		}
+		int nKeys = 0;
+		for (f = 0; f < FIELDS_NUM; ++f) {
+			FIELD_OFFSET[f] = nKeys;
+			nKeys += (int)FIELD_MASK[f] + 1;
+		}
+		final SplittableRandom rng = new SplittableRandom(0x70CCL);
+		FIELD_KEYS = new long[nKeys];
+		for (int i = 0; i < nKeys; ++i)
+			FIELD_KEYS[i] = rng.nextLong();
+		for (int i = 0; i < LAYOUT_KEYS.length; ++i)
+			LAYOUT_KEYS[i] = rng.nextLong();
+	}
+
+	private static void addField(final int f, final int shift, final int bits) {
+		FIELD_SHIFT[f] = shift;
+		FIELD_MASK[f] = (1L << bits) - 1;
+		for (int b = shift; b < shift + bits; ++b)
+			FIELD_OF_BIT[b] = f;
+	}
+
+	private static long key(final int f, final long s) {
+		return FIELD_KEYS[FIELD_OFFSET[f] + (int)((s >>> FIELD_SHIFT[f]) & FIELD_MASK[f])];
+	}
+}